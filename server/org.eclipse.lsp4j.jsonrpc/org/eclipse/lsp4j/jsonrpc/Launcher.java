@@ -232,7 +232,7 @@ public interface Launcher<T> {
 		protected ExecutorService executorService;
 		protected Function<MessageConsumer, MessageConsumer> messageWrapper;
 		protected Function<Throwable, ResponseError> exceptionHandler;
-		protected boolean validateMessages;
+		protected ReflectiveMessageValidator.Mode validationMode = ReflectiveMessageValidator.Mode.OFF;
 		protected Consumer<GsonBuilder> configureGson;
 		protected ClassLoader classLoader;
 		protected MessageTracer messageTracer;
@@ -288,7 +288,14 @@ public interface Launcher<T> {
 		}
 		
 		public Builder<T> validateMessages(boolean validate) {
-			this.validateMessages = validate;
+			return validateMessages(validate ? ReflectiveMessageValidator.Mode.FULL : ReflectiveMessageValidator.Mode.OFF);
+		}
+		
+		/**
+		 * Validate all messages, only some of them, or none, see {@link ReflectiveMessageValidator.Mode}.
+		 */
+		public Builder<T> validateMessages(ReflectiveMessageValidator.Mode mode) {
+			this.validationMode = mode;
 			return this;
 		}
 		
@@ -385,8 +392,9 @@ public interface Launcher<T> {
 			if (messageTracer != null) {
 				result = messageTracer.apply(consumer);
 			}
-			if (validateMessages) {
-				result = new ReflectiveMessageValidator(result);
+			if (validationMode != ReflectiveMessageValidator.Mode.OFF) {
+				result = new ReflectiveMessageValidator(result, validationMode,
+						ReflectiveMessageValidator.DEFAULT_SAMPLE_INTERVAL);
 			}
 			if (messageWrapper != null) {
 				result = messageWrapper.apply(result);
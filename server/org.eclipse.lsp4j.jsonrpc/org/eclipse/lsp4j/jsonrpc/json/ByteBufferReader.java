@@ -0,0 +1,107 @@
+/******************************************************************************
+ * Copyright (c) 2016 TypeFox and others.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ ******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A reader that decodes the bytes of a buffer directly into the character arrays it is asked to
+ * fill, without copying the content into a string first. The reader can be reused for further
+ * content with {@link #reset(ByteBuffer)}.
+ *
+ * Like {@link String#String(byte[], Charset)}, malformed input is replaced.
+ */
+final class ByteBufferReader extends Reader {
+
+	private final Charset charset;
+	private final CharsetDecoder decoder;
+
+	/**
+	 * Receives a surrogate pair when the caller has room for a single character only.
+	 */
+	private final CharBuffer pending = CharBuffer.allocate(2);
+
+	private ByteBuffer input;
+	private boolean flushed;
+
+	ByteBufferReader(Charset charset) {
+		this.charset = charset;
+		this.decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.pending.flip();
+	}
+
+	Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Read from the bytes between the position and the limit of the given buffer.
+	 * The buffer's position is advanced while reading.
+	 */
+	void reset(ByteBuffer input) {
+		this.input = input;
+		this.flushed = false;
+		this.decoder.reset();
+		this.pending.clear().flip();
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) {
+		if (len == 0)
+			return 0;
+		if (pending.hasRemaining()) {
+			cbuf[off] = pending.get();
+			return 1;
+		}
+		if (flushed)
+			return -1;
+
+		CharBuffer output;
+		if (len == 1) {
+			pending.clear();
+			output = pending;
+		} else {
+			output = CharBuffer.wrap(cbuf, off, len);
+		}
+
+		CoderResult result = decoder.decode(input, output, true);
+		if (result.isUnderflow()) {
+			decoder.flush(output);
+			flushed = true;
+		}
+
+		int read;
+		if (output == pending) {
+			pending.flip();
+			read = pending.hasRemaining() ? 1 : 0;
+			if (read == 1)
+				cbuf[off] = pending.get();
+		} else {
+			read = output.position() - off;
+		}
+		return read == 0 && flushed ? -1 : read;
+	}
+
+	@Override
+	public void close() {
+		input = null;
+	}
+
+}
@@ -0,0 +1,155 @@
+/******************************************************************************
+ * Copyright (c) 2016 TypeFox and others.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ ******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * A growable byte array that characters can be written to, encoding them as UTF-8 directly into
+ * the array. The array can be reused for further messages with {@link #reset(int)}.
+ *
+ * Like {@link String#getBytes(java.nio.charset.Charset)}, unpaired surrogates are replaced by
+ * {@code '?'}.
+ */
+final class MessageBuffer extends Writer {
+
+	private byte[] bytes;
+	private int count;
+
+	/**
+	 * A high surrogate written last, which is encoded together with the following low surrogate.
+	 */
+	private char highSurrogate;
+
+	MessageBuffer(int capacity) {
+		this.bytes = new byte[capacity];
+	}
+
+	/**
+	 * Discard the content, and continue writing at the given index.
+	 * The bytes before it are left for the caller to fill in.
+	 */
+	void reset(int start) {
+		ensureCapacity(start);
+		count = start;
+		highSurrogate = 0;
+	}
+
+	byte[] array() {
+		return bytes;
+	}
+
+	int size() {
+		return count;
+	}
+
+	int capacity() {
+		return bytes.length;
+	}
+
+	void write(byte[] src) {
+		ensureCapacity(count + src.length);
+		System.arraycopy(src, 0, bytes, count, src.length);
+		count += src.length;
+	}
+
+	@Override
+	public void write(int c) {
+		writeChar((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) {
+		// enough for ASCII, other characters make room for themselves
+		ensureCapacity(count + len);
+		for (int i = off; i < off + len; i++) {
+			char c = cbuf[i];
+			if (c < 0x80 && highSurrogate == 0 && count < bytes.length)
+				bytes[count++] = (byte) c;
+			else
+				writeChar(c);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) {
+		// enough for ASCII, other characters make room for themselves
+		ensureCapacity(count + len);
+		for (int i = off; i < off + len; i++) {
+			char c = str.charAt(i);
+			if (c < 0x80 && highSurrogate == 0 && count < bytes.length)
+				bytes[count++] = (byte) c;
+			else
+				writeChar(c);
+		}
+	}
+
+	private void writeChar(char c) {
+		if (highSurrogate != 0) {
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if (Character.isLowSurrogate(c)) {
+				writeCodePoint(Character.toCodePoint(high, c));
+				return;
+			}
+			writeCodePoint('?');
+		}
+		if (Character.isHighSurrogate(c))
+			highSurrogate = c;
+		else if (Character.isLowSurrogate(c))
+			writeCodePoint('?');
+		else
+			writeCodePoint(c);
+	}
+
+	private void writeCodePoint(int c) {
+		ensureCapacity(count + 4);
+		if (c < 0x80) {
+			bytes[count++] = (byte) c;
+		} else if (c < 0x800) {
+			bytes[count++] = (byte) (0xC0 | (c >> 6));
+			bytes[count++] = (byte) (0x80 | (c & 0x3F));
+		} else if (c < 0x10000) {
+			bytes[count++] = (byte) (0xE0 | (c >> 12));
+			bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			bytes[count++] = (byte) (0x80 | (c & 0x3F));
+		} else {
+			bytes[count++] = (byte) (0xF0 | (c >> 18));
+			bytes[count++] = (byte) (0x80 | ((c >> 12) & 0x3F));
+			bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			bytes[count++] = (byte) (0x80 | (c & 0x3F));
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > bytes.length)
+			bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+	}
+
+	/**
+	 * Encode a high surrogate that was written last, and is not followed by anything.
+	 */
+	@Override
+	public void flush() {
+		if (highSurrogate != 0) {
+			highSurrogate = 0;
+			writeCodePoint('?');
+		}
+	}
+
+	@Override
+	public void close() {
+		flush();
+	}
+
+}
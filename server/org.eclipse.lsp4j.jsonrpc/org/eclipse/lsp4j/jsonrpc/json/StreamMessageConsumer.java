@@ -14,6 +14,7 @@ package org.eclipse.lsp4j.jsonrpc.json;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 
 import org.eclipse.lsp4j.jsonrpc.JsonRpcException;
 import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
@@ -21,14 +22,35 @@ import org.eclipse.lsp4j.jsonrpc.messages.Message;
 
 /**
  * A message consumer that serializes messages to JSON and sends them to an output stream.
+ * 
+ * Messages are serialized into pooled byte buffers, leaving room for the header in front of the
+ * content. The header is filled in once the content length is known, and header and content are
+ * written to the stream at once.
  */
 public class StreamMessageConsumer implements MessageConsumer, MessageConstants {
 
+	/**
+	 * Bytes left free in front of the content, enough for the headers written by {@link #getHeader(int)}.
+	 */
+	private static final int HEADER_SPACE = 128;
+
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+
+	/**
+	 * Larger buffers are not kept after use, to not hold on to the memory of a rare large message.
+	 */
+	private static final int MAX_POOLED_BUFFER_SIZE = 1 << 20;
+
+	private static final int MAX_POOLED_BUFFERS = 4;
+
 	private final String encoding;
+	private final boolean isUtf8;
 	private final MessageJsonHandler jsonHandler;
 
 	private final Object outputLock = new Object();
 
+	private final ArrayDeque<MessageBuffer> bufferPool = new ArrayDeque<>(MAX_POOLED_BUFFERS);
+
 	private OutputStream output;
 
 	public StreamMessageConsumer(MessageJsonHandler jsonHandler) {
@@ -42,6 +64,7 @@ public class StreamMessageConsumer implements MessageConsumer, MessageConstants
 	public StreamMessageConsumer(OutputStream output, String encoding, MessageJsonHandler jsonHandler) {
 		this.output = output;
 		this.encoding = encoding;
+		this.isUtf8 = StandardCharsets.UTF_8.name().equals(encoding);
 		this.jsonHandler = jsonHandler;
 	}
 
@@ -55,21 +78,53 @@ public class StreamMessageConsumer implements MessageConsumer, MessageConstants
 
 	@Override
 	public void consume(Message message) {
+		MessageBuffer buffer = acquireBuffer();
 		try {
-			String content = jsonHandler.serialize(message);
-			byte[] contentBytes = content.getBytes(encoding);
-			int contentLength = contentBytes.length;
+			buffer.reset(HEADER_SPACE);
+			if (isUtf8) {
+				jsonHandler.serialize(message, buffer);
+				buffer.flush();
+			} else {
+				buffer.write(jsonHandler.serialize(message).getBytes(encoding));
+			}
+			int contentLength = buffer.size() - HEADER_SPACE;
 
-			String header = getHeader(contentLength);
-			byte[] headerBytes = header.getBytes(StandardCharsets.US_ASCII);
+			byte[] headerBytes = getHeader(contentLength).getBytes(StandardCharsets.US_ASCII);
+			int start = HEADER_SPACE - headerBytes.length;
+			if (start >= 0)
+				System.arraycopy(headerBytes, 0, buffer.array(), start, headerBytes.length);
 
 			synchronized (outputLock) {
-				output.write(headerBytes);
-				output.write(contentBytes);
+				if (start >= 0) {
+					output.write(buffer.array(), start, buffer.size() - start);
+				} else {
+					output.write(headerBytes);
+					output.write(buffer.array(), HEADER_SPACE, contentLength);
+				}
 				output.flush();
 			}
 		} catch (IOException exception) {
 			throw new JsonRpcException(exception);
+		} finally {
+			releaseBuffer(buffer);
+		}
+	}
+
+	private MessageBuffer acquireBuffer() {
+		synchronized (bufferPool) {
+			MessageBuffer buffer = bufferPool.poll();
+			if (buffer != null)
+				return buffer;
+		}
+		return new MessageBuffer(INITIAL_BUFFER_SIZE);
+	}
+
+	private void releaseBuffer(MessageBuffer buffer) {
+		if (buffer.capacity() > MAX_POOLED_BUFFER_SIZE)
+			return;
+		synchronized (bufferPool) {
+			if (bufferPool.size() < MAX_POOLED_BUFFERS)
+				bufferPool.push(buffer);
 		}
 	}
 
@@ -14,6 +14,10 @@ package org.eclipse.lsp4j.jsonrpc.json;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -27,15 +31,37 @@ import org.eclipse.lsp4j.jsonrpc.messages.Message;
 
 /**
  * A message producer that reads from an input stream and parses messages from JSON.
+ * 
+ * The input is read in bulk into a buffer that is reused for all messages. Headers are
+ * scanned in that buffer, and the buffer grows to hold the largest message body seen so far.
+ * 
+ * Empty lines before the first header line of a message are skipped without an error. When the
+ * {@value MessageConstants#CONTENT_LENGTH_HEADER} header is missing, the reported error does not
+ * include the header lines, since they are not collected into a string.
  */
 public class StreamMessageProducer implements MessageProducer, Closeable, MessageConstants {
 
 	private static final Logger LOG = Logger.getLogger(StreamMessageProducer.class.getName());
 
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+
+	private static final byte[] CONTENT_LENGTH = CONTENT_LENGTH_HEADER.getBytes(StandardCharsets.US_ASCII);
+
 	private final MessageJsonHandler jsonHandler;
 	private final MessageIssueHandler issueHandler;
 
 	private InputStream input;
+	private ReadableByteChannel channel;
+
+	/**
+	 * Bytes read but not processed yet are between position and limit.
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * Decodes the message content while it is parsed, reused as long as the charset does not change.
+	 */
+	private ByteBufferReader contentReader;
 
 	private MessageConsumer callback;
 	private boolean keepRunning;
@@ -45,22 +71,38 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 	}
 	
 	public StreamMessageProducer(InputStream input, MessageJsonHandler jsonHandler, MessageIssueHandler issueHandler) {
+		this(Channels.newChannel(input), jsonHandler, issueHandler);
 		this.input = input;
+	}
+
+	public StreamMessageProducer(ReadableByteChannel channel, MessageJsonHandler jsonHandler, MessageIssueHandler issueHandler) {
+		this.channel = channel;
 		this.jsonHandler = jsonHandler;
 		this.issueHandler = issueHandler;
+		this.buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE).flip();
 	}
 
+	/**
+	 * @return the input stream, or {@code null} if this producer reads from a channel
+	 */
 	public InputStream getInput() {
 		return input;
 	}
 
 	public void setInput(InputStream input) {
 		this.input = input;
+		this.channel = Channels.newChannel(input);
+		this.buffer.clear().flip();
 	}
 
 	protected static class Headers {
 		public int contentLength = -1;
 		public String charset = StandardCharsets.UTF_8.name();
+
+		protected void reset() {
+			contentLength = -1;
+			charset = StandardCharsets.UTF_8.name();
+		}
 	}
 
 	@Override
@@ -71,47 +113,17 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 		this.keepRunning = true;
 		this.callback = callback;
 		try {
-			StringBuilder headerBuilder = null;
-			StringBuilder debugBuilder = null;
-			boolean newLine = false;
 			Headers headers = new Headers();
 			while (keepRunning) {
-				int c = input.read();
-				if (c == -1) {
+				if (!readHeaders(headers)) {
 					// End of input stream has been reached
 					keepRunning = false;
-				} else {
-					if (debugBuilder == null)
-						debugBuilder = new StringBuilder();
-					debugBuilder.append((char) c);
-					if (c == '\n') {
-						if (newLine) {
-							// Two consecutive newlines have been read, which signals the start of the message content
-							if (headers.contentLength < 0) {
-								fireError(new IllegalStateException("Missing header " + CONTENT_LENGTH_HEADER
-										+ " in input \"" + debugBuilder + "\""));
-							} else {
-								boolean result = handleMessage(input, headers);
-								if (!result)
-									keepRunning = false;
-								newLine = false;
-							}
-							headers = new Headers();
-							debugBuilder = null;
-						} else if (headerBuilder != null) {
-							// A single newline ends a header line
-							parseHeader(headerBuilder.toString(), headers);
-							headerBuilder = null;
-						}
-						newLine = true;
-					} else if (c != '\r') {
-						// Add the input to the current header line
-						if (headerBuilder == null)
-							headerBuilder = new StringBuilder();
-						headerBuilder.append((char) c);
-						newLine = false;
-					}
+				} else if (headers.contentLength < 0) {
+					fireError(new IllegalStateException("Missing header " + CONTENT_LENGTH_HEADER + " in input"));
+				} else if (!handleMessage(headers)) {
+					keepRunning = false;
 				}
+				headers.reset();
 			} // while (keepRunning)
 		} catch (IOException exception) {
 			if (JsonRpcException.indicatesStreamClosed(exception)) {
@@ -126,6 +138,80 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 		}
 	}
 
+	/**
+	 * Read header lines up to and including the empty line that separates them from the content.
+	 * Empty lines before the first header are skipped. Afterwards, the buffer position is at the
+	 * start of the content.
+	 * 
+	 * @return {@code false} if the end of the input was reached
+	 */
+	private boolean readHeaders(Headers headers) throws IOException {
+		boolean sawHeader = false;
+		int scanned = buffer.position();
+		while (true) {
+			byte[] bytes = buffer.array();
+			int limit = buffer.limit();
+			int lineStart = buffer.position();
+			for (int i = scanned; i < limit; i++) {
+				if (bytes[i] != '\n')
+					continue;
+
+				int lineEnd = i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i;
+				buffer.position(i + 1);
+				if (lineEnd > lineStart) {
+					parseHeader(bytes, lineStart, lineEnd, headers);
+					sawHeader = true;
+				} else if (sawHeader) {
+					return true;
+				}
+				lineStart = i + 1;
+			}
+
+			// The buffer ends within a header line, read more
+			scanned = buffer.limit() - buffer.position();
+			if (!fill())
+				return false;
+			scanned = buffer.position() + scanned;
+		}
+	}
+
+	/**
+	 * Read more input after the bytes that are not processed yet. The unprocessed bytes are moved
+	 * to the start of the buffer, and the buffer grows when they fill it already.
+	 * 
+	 * @return {@code false} if the end of the input was reached
+	 */
+	private boolean fill() throws IOException {
+		buffer.compact();
+		if (!buffer.hasRemaining()) {
+			ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+		int read = channel.read(buffer);
+		buffer.flip();
+		return read >= 0;
+	}
+
+	/**
+	 * Make sure that the buffer holds at least the given number of unprocessed bytes.
+	 * 
+	 * @return {@code false} if the end of the input was reached before
+	 */
+	private boolean ensureAvailable(int length) throws IOException {
+		if (buffer.capacity() < length) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+			larger.put(buffer);
+			buffer = larger.flip();
+		}
+		while (buffer.remaining() < length) {
+			if (!fill())
+				return false;
+		}
+		return true;
+	}
+
 	/**
 	 * Log an error.
 	 */
@@ -142,6 +228,64 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 		LOG.log(Level.INFO, message, cause);
 	}
 
+	/**
+	 * Parse a header line given as bytes. The {@value MessageConstants#CONTENT_LENGTH_HEADER}
+	 * header is parsed in place, all others are passed to {@link #parseHeader(String, Headers)}.
+	 */
+	private void parseHeader(byte[] bytes, int start, int end, Headers headers) {
+		int keyStart = skipWhitespace(bytes, start, end);
+		int keyEnd = keyStart + CONTENT_LENGTH.length;
+		if (keyEnd <= end && regionMatches(bytes, keyStart, CONTENT_LENGTH)) {
+			int sepIndex = skipWhitespace(bytes, keyEnd, end);
+			if (sepIndex < end && bytes[sepIndex] == ':') {
+				int valueStart = skipWhitespace(bytes, sepIndex + 1, end);
+				int valueEnd = end;
+				while (valueEnd > valueStart && bytes[valueEnd - 1] <= ' ')
+					valueEnd--;
+				int contentLength = parseLength(bytes, valueStart, valueEnd);
+				if (contentLength >= 0)
+					headers.contentLength = contentLength;
+				else
+					fireError(new NumberFormatException("For input string: \""
+							+ new String(bytes, valueStart, valueEnd - valueStart, StandardCharsets.US_ASCII) + "\""));
+				return;
+			}
+		}
+		parseHeader(new String(bytes, start, end - start, StandardCharsets.US_ASCII), headers);
+	}
+
+	private static int skipWhitespace(byte[] bytes, int start, int end) {
+		while (start < end && bytes[start] <= ' ')
+			start++;
+		return start;
+	}
+
+	private static boolean regionMatches(byte[] bytes, int start, byte[] expected) {
+		for (int i = 0; i < expected.length; i++) {
+			if (bytes[start + i] != expected[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the non-negative decimal number, or {@code -1} if it is not one
+	 */
+	private static int parseLength(byte[] bytes, int start, int end) {
+		if (start == end)
+			return -1;
+		long result = 0;
+		for (int i = start; i < end; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9)
+				return -1;
+			result = result * 10 + digit;
+			if (result > Integer.MAX_VALUE)
+				return -1;
+		}
+		return (int) result;
+	}
+
 	/**
 	 * Parse a header attribute and set the corresponding data in the {@link Headers} fields.
 	 */
@@ -168,29 +312,24 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 	}
 
 	/**
-	 * Read the JSON content part of a message, parse it, and notify the callback.
+	 * Read the JSON content part of a message from the buffer, parse it, and notify the callback.
 	 * 
 	 * @return {@code true} if we should continue reading from the input stream, {@code false} if we should stop
 	 */
-	protected boolean handleMessage(InputStream input, Headers headers) throws IOException {
+	protected boolean handleMessage(Headers headers) throws IOException {
 		if (callback == null)
 			callback = message -> LOG.log(Level.INFO, "Received message: " + message);
 		
-		try {
-			int contentLength = headers.contentLength;
-			byte[] buffer = new byte[contentLength];
-			int bytesRead = 0;
-
-			while (bytesRead < contentLength) {
-				int readResult = input.read(buffer, bytesRead, contentLength - bytesRead);
-				if (readResult == -1)
-					return false;
-				bytesRead += readResult;
-			}
+		int contentLength = headers.contentLength;
+		if (!ensureAvailable(contentLength))
+			return false;
 
-			String content = new String(buffer, headers.charset);
+		int start = buffer.position();
+		int limit = buffer.limit();
+		buffer.limit(start + contentLength);
+		try {
 			try {
-				Message message = jsonHandler.parseMessage(content);
+				Message message = jsonHandler.parseMessage(getContentReader(headers));
 				callback.consume(message);
 			} catch (MessageIssueException exception) {
 				// An issue was found while parsing or validating the message
@@ -200,14 +339,29 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
 					fireError(exception);
 			}
 		} catch (Exception exception) {
-			// UnsupportedEncodingException can be thrown by String constructor
+			// IllegalCharsetNameException and UnsupportedCharsetException can be thrown by Charset.forName
 			// JsonParseException can be thrown by jsonHandler
 			// We also catch arbitrary exceptions that are thrown by message consumers in order to keep this thread alive
 			fireError(exception);
+		} finally {
+			buffer.limit(limit);
+			buffer.position(start + contentLength);
 		}
 		return true;
 	}
 
+	/**
+	 * @return a reader for the content between position and limit of the buffer
+	 */
+	private ByteBufferReader getContentReader(Headers headers) {
+		Charset charset = StandardCharsets.UTF_8.name().equalsIgnoreCase(headers.charset)
+				? StandardCharsets.UTF_8 : Charset.forName(headers.charset);
+		if (contentReader == null || !contentReader.getCharset().equals(charset))
+			contentReader = new ByteBufferReader(charset);
+		contentReader.reset(buffer);
+		return contentReader;
+	}
+
 	@Override
 	public void close() {
 		keepRunning = false;
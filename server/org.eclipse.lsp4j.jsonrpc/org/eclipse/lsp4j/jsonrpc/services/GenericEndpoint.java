@@ -11,6 +11,9 @@
  ******************************************************************************/
 package org.eclipse.lsp4j.jsonrpc.services;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -34,12 +37,19 @@ import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
 /**
  * An endpoint that reflectively delegates to {@link JsonNotification} and
  * {@link JsonRequest} methods of one or more given delegate objects.
+ * 
+ * The methods are looked up once, and bound to their delegate as {@link MethodHandle}s, so that
+ * a message with a single parameter is dispatched without reflection or argument arrays.
  */
 public class GenericEndpoint implements Endpoint {
 	
 	private static final Logger LOG = Logger.getLogger(GenericEndpoint.class.getName());
 	private static final Object[] NO_ARGUMENTS = {};
 
+	private static final MethodType NO_ARGUMENT_INVOKER = MethodType.methodType(Object.class);
+	private static final MethodType SINGLE_ARGUMENT_INVOKER = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SPREAD_ARGUMENTS_INVOKER = MethodType.methodType(Object.class, Object[].class);
+
 	private final LinkedHashMap<String, Function<Object, CompletableFuture<Object>>> methodHandlers = new LinkedHashMap<>();
 	private final List<Object> delegates;
 
@@ -57,16 +67,7 @@ public class GenericEndpoint implements Endpoint {
 
 	protected void recursiveFindRpcMethods(Object current, Set<Class<?>> visited, Set<Class<?>> visitedForDelegate) {
 		AnnotationUtil.findRpcMethods(current.getClass(), visited, (methodInfo) -> {
-			@SuppressWarnings("unchecked")
-			Function<Object, CompletableFuture<Object>> handler = (arg) -> {
-				try {
-					Method method = methodInfo.method;
-					Object[] arguments = this.getArguments(method, arg);
-					return (CompletableFuture<Object>) method.invoke(current, arguments);
-				} catch (InvocationTargetException | IllegalAccessException e) {
-					throw new RuntimeException(e);
-				}
-			};
+			Function<Object, CompletableFuture<Object>> handler = createHandler(methodInfo.method, current);
 			if (methodHandlers.put(methodInfo.name, handler) != null) {
 				throw new IllegalStateException("Multiple methods for name " + methodInfo.name);
 			}
@@ -85,10 +86,83 @@ public class GenericEndpoint implements Endpoint {
 		});
 	}
 	
+	/**
+	 * Create a handler that calls the given method on the receiver. A single parameter, and no
+	 * parameter at all, are passed directly. Otherwise, the arguments are collected in an array
+	 * by {@link #getArguments(Method, Object)}.
+	 */
+	protected Function<Object, CompletableFuture<Object>> createHandler(Method method, Object receiver) {
+		MethodHandle target;
+		try {
+			target = MethodHandles.lookup().unreflect(method).bindTo(receiver);
+		} catch (IllegalAccessException e) {
+			// Fail only when the method is called, like a reflective call would
+			return (arg) -> {
+				try {
+					return toFuture(method.invoke(receiver, getArguments(method, arg)));
+				} catch (InvocationTargetException | IllegalAccessException ex) {
+					throw new RuntimeException(ex);
+				}
+			};
+		}
+		int parameterCount = method.getParameterCount();
+		MethodHandle spread = target.asSpreader(Object[].class, parameterCount).asType(SPREAD_ARGUMENTS_INVOKER);
+
+		if (parameterCount == 0) {
+			MethodHandle direct = target.asType(NO_ARGUMENT_INVOKER);
+			return (arg) -> {
+				if (arg != null)
+					return invoke(spread, getArguments(method, arg));
+				try {
+					return toFuture(direct.invokeExact());
+				} catch (Throwable t) {
+					throw rethrow(t);
+				}
+			};
+		}
+		if (parameterCount == 1) {
+			MethodHandle direct = target.asType(SINGLE_ARGUMENT_INVOKER);
+			return (arg) -> {
+				if (arg instanceof List<?>)
+					return invoke(spread, getArguments(method, arg));
+				try {
+					return toFuture(direct.invokeExact(arg));
+				} catch (Throwable t) {
+					throw rethrow(t);
+				}
+			};
+		}
+		return (arg) -> invoke(spread, getArguments(method, arg));
+	}
+
+	private static CompletableFuture<Object> invoke(MethodHandle spread, Object[] arguments) {
+		try {
+			return toFuture(spread.invokeExact(arguments));
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static CompletableFuture<Object> toFuture(Object result) {
+		return (CompletableFuture<Object>) result;
+	}
+
+	/**
+	 * Runtime exceptions of the invoked method are passed on as they are. Errors and checked
+	 * exceptions are wrapped, as {@link Method#invoke} did, so that they do not end the thread
+	 * reading messages.
+	 */
+	private static RuntimeException rethrow(Throwable t) {
+		if (t instanceof RuntimeException)
+			return (RuntimeException) t;
+		return new RuntimeException(new InvocationTargetException(t));
+	}
+
 	protected Object[] getArguments(Method method, Object arg) {
 		int parameterCount = method.getParameterCount();
 		if (parameterCount == 0) {
-			if (arg != null) {
+			if (arg != null && LOG.isLoggable(Level.WARNING)) {
 				LOG.warning("Unexpected params '" + arg + "' for '" + method + "' is ignored");
 			}
 			return NO_ARGUMENTS;
@@ -100,9 +174,11 @@ public class GenericEndpoint implements Endpoint {
 				return arguments.toArray();
 			}
 			if (argumentCount > parameterCount) {
-				Stream<?> unexpectedArguments = arguments.stream().skip(parameterCount);
-				String unexpectedParams = unexpectedArguments.map(a -> "'" + a + "'").reduce((a, a2) -> a + ", " + a2).get();
-				LOG.warning("Unexpected params " + unexpectedParams + " for '" + method + "' is ignored");
+				if (LOG.isLoggable(Level.WARNING)) {
+					Stream<?> unexpectedArguments = arguments.stream().skip(parameterCount);
+					String unexpectedParams = unexpectedArguments.map(a -> "'" + a + "'").reduce((a, a2) -> a + ", " + a2).get();
+					LOG.warning("Unexpected params " + unexpectedParams + " for '" + method + "' is ignored");
+				}
 				return arguments.subList(0, parameterCount).toArray();
 			}
 			return arguments.toArray(new Object[parameterCount]);
@@ -13,13 +13,16 @@ package org.eclipse.lsp4j.jsonrpc.validation;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,30 +39,92 @@ import com.google.gson.JsonElement;
 /**
  * Validates messages and forwards them to other message consumers. In case an issue is found,
  * a {@link MessageIssueException} is thrown.
+ * 
+ * The getters of a class and their {@link NonNull} annotations are looked up once per class.
+ * Depending on the {@link Mode}, all messages, only some, or none are validated.
  */
 public class ReflectiveMessageValidator implements MessageConsumer {
 
 	private static final Logger LOG = Logger.getLogger(ReflectiveMessageValidator.class.getName());
 
+	/** Messages validated in {@link Mode#SAMPLED}: one in this many. */
+	public static final int DEFAULT_SAMPLE_INTERVAL = 16;
+
+	public enum Mode {
+		/** Forward messages without validating them. */
+		OFF,
+		/** Validate one in a number of messages, and forward the others unchecked. */
+		SAMPLED,
+		/** Validate every message. */
+		FULL
+	}
+
 	private final MessageConsumer delegate;
+
+	private final Mode mode;
+	private final int sampleInterval;
+	private final AtomicLong consumed = new AtomicLong();
+
+	/**
+	 * The getters of a class, with their annotations resolved.
+	 */
+	private final ClassValue<Accessor[]> accessors = new ClassValue<Accessor[]>() {
+		@Override
+		protected Accessor[] computeValue(Class<?> type) {
+			List<Accessor> result = new ArrayList<>();
+			for (Method method : type.getMethods()) {
+				if (isGetter(method))
+					result.add(new Accessor(method));
+			}
+			return result.toArray(new Accessor[result.size()]);
+		}
+	};
 	
 	/**
 	 * When created with this constructor, the validator acts as a message sink.
 	 */
 	public ReflectiveMessageValidator() {
-		this.delegate = null;
+		this(null);
 	}
 
 	/**
 	 * Forward messages to the given consumer unless an issue is found.
 	 */
 	public ReflectiveMessageValidator(MessageConsumer delegate) {
+		this(delegate, Mode.FULL, DEFAULT_SAMPLE_INTERVAL);
+	}
+
+	/**
+	 * Forward messages to the given consumer unless an issue is found in a validated message.
+	 * 
+	 * @param sampleInterval - in {@link Mode#SAMPLED}, one in this many messages is validated
+	 */
+	public ReflectiveMessageValidator(MessageConsumer delegate, Mode mode, int sampleInterval) {
+		if (sampleInterval < 1)
+			throw new IllegalArgumentException("The sample interval must be positive: " + sampleInterval);
 		this.delegate = delegate;
+		this.mode = mode;
+		this.sampleInterval = sampleInterval;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	private boolean shouldValidate() {
+		switch (mode) {
+		case OFF:
+			return false;
+		case SAMPLED:
+			return consumed.getAndIncrement() % sampleInterval == 0;
+		default:
+			return true;
+		}
 	}
 
 	@Override
 	public void consume(Message message) throws MessageIssueException, JsonRpcException {
-		List<MessageIssue> issues = validate(message);
+		List<MessageIssue> issues = shouldValidate() ? validate(message) : Collections.emptyList();
 		if (!issues.isEmpty()) {
 			// Sort the messages in order to get a stable order (otherwise it depends on the JVM's reflection implementation)
 			Collections.sort(issues, (issue1, issue2) -> issue1.getText().compareTo(issue2.getText()));
@@ -80,7 +145,7 @@ public class ReflectiveMessageValidator implements MessageConsumer {
 	protected List<MessageIssue> validate(Object object) {
 		List<MessageIssue> result = new ArrayList<>();
 		try {
-			validate(object, result, new LinkedList<>(), new LinkedList<>());
+			validate(object, result, Collections.newSetFromMap(new IdentityHashMap<>()), new ArrayDeque<>());
 		} catch (Exception e) {
 			LOG.log(Level.SEVERE, "Error during message validation: " + e.getMessage(), e);
 			result.add(new MessageIssue("Message validation failed, please check the logs of the remote endpoint.",
@@ -91,8 +156,10 @@ public class ReflectiveMessageValidator implements MessageConsumer {
 	
 	/**
 	 * Validate all fields of the given object.
+	 * 
+	 * @param objectStack - the objects that contain the given one, compared by identity
 	 */
-	protected void validate(Object object, List<MessageIssue> issues, Deque<Object> objectStack, Deque<Object> accessorStack) throws Exception {
+	protected void validate(Object object, List<MessageIssue> issues, Set<Object> objectStack, Deque<Object> accessorStack) throws Exception {
 		if (object == null 
 				|| object instanceof Enum<?> 
 				|| object instanceof String 
@@ -102,13 +169,12 @@ public class ReflectiveMessageValidator implements MessageConsumer {
 				|| object instanceof Throwable) {
 			return;
 		}
-		if (objectStack.contains(object)) {
+		if (!objectStack.add(object)) {
 			issues.add(new MessageIssue("An element of the message has a direct or indirect reference to itself."
 					+ " Path: " + createPathString(accessorStack),
 					ResponseErrorCode.InvalidParams.getValue()));
 			return;
 		}
-		objectStack.push(object);
 		if (object instanceof List<?>) {
 			ListIterator<?> iter = ((List<?>) object).listIterator();
 			while (iter.hasNext()) {
@@ -134,22 +200,21 @@ public class ReflectiveMessageValidator implements MessageConsumer {
 						ResponseErrorCode.InvalidParams.getValue()));
 			}
 		} else {
-			for (Method method : object.getClass().getMethods()) {
-				if (isGetter(method)) {
-					accessorStack.push(method);
-					Object value = method.invoke(object);
-					if (value == null && method.getAnnotation(NonNull.class) != null) {
-						issues.add(new MessageIssue("The accessor '" + method.getDeclaringClass().getSimpleName()
-								 + "." + method.getName() + "()' must return a non-null value."
-								 + " Path: " + createPathString(accessorStack),
-								ResponseErrorCode.InvalidParams.getValue()));
-					}
-					validate(value, issues, objectStack, accessorStack);
-					accessorStack.pop();
+			for (Accessor accessor : accessors.get(object.getClass())) {
+				Method method = accessor.method;
+				accessorStack.push(method);
+				Object value = method.invoke(object);
+				if (value == null && accessor.isNonNull) {
+					issues.add(new MessageIssue("The accessor '" + method.getDeclaringClass().getSimpleName()
+							 + "." + method.getName() + "()' must return a non-null value."
+							 + " Path: " + createPathString(accessorStack),
+							ResponseErrorCode.InvalidParams.getValue()));
 				}
+				validate(value, issues, objectStack, accessorStack);
+				accessorStack.pop();
 			}
 		}
-		objectStack.pop();
+		objectStack.remove(object);
 	}
 	
 	protected String createPathString(Deque<Object> accessorStack) {
@@ -182,4 +247,14 @@ public class ReflectiveMessageValidator implements MessageConsumer {
 			return methodName;
 	}
 	
+	private static final class Accessor {
+		final Method method;
+		final boolean isNonNull;
+
+		Accessor(Method method) {
+			this.method = method;
+			this.isNonNull = method.getAnnotation(NonNull.class) != null;
+		}
+	}
+
 }
@@ -0,0 +1,177 @@
+package som.langserv;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.Diagnostic;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.services.LanguageClient;
+
+
+/**
+ * Publishes diagnostics to the client, but only when they changed since the
+ * last publication for the same document.
+ *
+ * Publications are paced to at most {@link #RATE} per second, so that linting
+ * the whole workspace does not flood the client. Publications beyond the rate
+ * wait, and if a document is reported again in the meantime, only its latest
+ * diagnostics are sent. Diagnostics that were cleared are not sent right away,
+ * but together with the other waiting publications on the next tick.
+ */
+public class DiagnosticsPublisher {
+  private static final String RATE_PROP = "som.langserv.diagnostics-per-second";
+
+  /** Maximum number of publications per second, and the size of a burst. */
+  private static final int RATE = Math.max(1, Integer.getInteger(RATE_PROP, 500));
+
+  /** Milliseconds between two flushes of waiting publications. */
+  private static final long TICK = 50;
+
+  private static final ScheduledExecutorService TICKS = createTicks();
+
+  private static ScheduledExecutorService createTicks() {
+    ScheduledThreadPoolExecutor ticks = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "SOM LS Diagnostics");
+      t.setDaemon(true);
+      return t;
+    });
+    ticks.setRemoveOnCancelPolicy(true);
+    return ticks;
+  }
+
+  private final LanguageClient client;
+
+  /** Publications per second, {@link #RATE} unless set by a test. */
+  private final int rate;
+
+  /** The diagnostics last sent for a document, as long as they are not empty. */
+  private final Map<String, Published> published;
+
+  /** Publications waiting for the next tick, latest per document. */
+  private final LinkedHashMap<String, List<Diagnostic>> waiting;
+
+  private double tokens;
+  private long lastRefill;
+  private boolean tickScheduled;
+
+  public DiagnosticsPublisher(final LanguageClient client) {
+    this(client, RATE);
+  }
+
+  DiagnosticsPublisher(final LanguageClient client, final int rate) {
+    this.client = client;
+    this.rate = rate;
+    this.published = new HashMap<>();
+    this.waiting = new LinkedHashMap<>();
+    this.tokens = rate;
+    this.lastRefill = System.nanoTime();
+  }
+
+  /**
+   * Publish the diagnostics for the document, unless the client has them
+   * already.
+   *
+   * @param diagnostics the diagnostics, or {@code null} to clear them
+   */
+  public synchronized void publish(final String documentUri,
+      final List<Diagnostic> diagnostics) {
+    List<Diagnostic> current = diagnostics == null ? List.of() : List.copyOf(diagnostics);
+    for (Diagnostic d : current) {
+      assert d.getRange() != null;
+    }
+
+    Published last = published.get(documentUri);
+    boolean unchanged = last == null ? current.isEmpty() : last.isSameAs(current);
+    if (unchanged) {
+      // anything waiting would only change what the client has already
+      waiting.remove(documentUri);
+      return;
+    }
+
+    waiting.remove(documentUri);
+    if (!current.isEmpty() && waiting.isEmpty() && tryAcquire()) {
+      send(documentUri, current);
+      return;
+    }
+
+    waiting.put(documentUri, current);
+    scheduleTick();
+  }
+
+  private void send(final String documentUri, final List<Diagnostic> diagnostics) {
+    if (diagnostics.isEmpty()) {
+      published.remove(documentUri);
+    } else {
+      published.put(documentUri, new Published(diagnostics));
+    }
+
+    client.publishDiagnostics(
+        new PublishDiagnosticsParams(documentUri, new ArrayList<>(diagnostics)));
+  }
+
+  private boolean tryAcquire() {
+    long now = System.nanoTime();
+    tokens = Math.min(rate, tokens + (now - lastRefill) / 1e9 * rate);
+    lastRefill = now;
+
+    if (tokens < 1) {
+      return false;
+    }
+    tokens -= 1;
+    return true;
+  }
+
+  private void scheduleTick() {
+    if (!tickScheduled) {
+      tickScheduled = true;
+      TICKS.schedule(this::flush, TICK, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void flush() {
+    try {
+      synchronized (this) {
+        tickScheduled = false;
+
+        Iterator<Entry<String, List<Diagnostic>>> it = waiting.entrySet().iterator();
+        while (it.hasNext() && tryAcquire()) {
+          Entry<String, List<Diagnostic>> e = it.next();
+          it.remove();
+          send(e.getKey(), e.getValue());
+        }
+
+        if (!waiting.isEmpty()) {
+          scheduleTick();
+        }
+      }
+    } catch (Throwable e) {
+      ServerLauncher.logErr("[SOM LS] Failed to publish diagnostics: " + e.getMessage());
+    }
+  }
+
+  /**
+   * The diagnostics sent for a document. The hash rejects most changes
+   * without comparing the diagnostics one by one.
+   */
+  private static final class Published {
+    private final int hash;
+    private final List<Diagnostic> diagnostics;
+
+    Published(final List<Diagnostic> diagnostics) {
+      this.hash = diagnostics.hashCode();
+      this.diagnostics = diagnostics;
+    }
+
+    boolean isSameAs(final List<Diagnostic> other) {
+      return hash == other.hashCode() && diagnostics.equals(other);
+    }
+  }
+}
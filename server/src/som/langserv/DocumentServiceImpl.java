@@ -3,8 +3,13 @@ package som.langserv;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import org.eclipse.lsp4j.CodeLens;
 import org.eclipse.lsp4j.CodeLensParams;
@@ -12,7 +17,6 @@ import org.eclipse.lsp4j.CompletionItem;
 import org.eclipse.lsp4j.CompletionList;
 import org.eclipse.lsp4j.CompletionParams;
 import org.eclipse.lsp4j.DefinitionParams;
-import org.eclipse.lsp4j.Diagnostic;
 import org.eclipse.lsp4j.DidChangeTextDocumentParams;
 import org.eclipse.lsp4j.DidCloseTextDocumentParams;
 import org.eclipse.lsp4j.DidOpenTextDocumentParams;
@@ -21,25 +25,31 @@ import org.eclipse.lsp4j.DocumentHighlight;
 import org.eclipse.lsp4j.DocumentHighlightParams;
 import org.eclipse.lsp4j.DocumentSymbol;
 import org.eclipse.lsp4j.DocumentSymbolParams;
+import org.eclipse.lsp4j.FileChangeType;
+import org.eclipse.lsp4j.FileEvent;
 import org.eclipse.lsp4j.Hover;
 import org.eclipse.lsp4j.HoverParams;
 import org.eclipse.lsp4j.Location;
 import org.eclipse.lsp4j.LocationLink;
-import org.eclipse.lsp4j.PublishDiagnosticsParams;
 import org.eclipse.lsp4j.ReferenceParams;
 import org.eclipse.lsp4j.SemanticTokens;
+import org.eclipse.lsp4j.SemanticTokensDelta;
+import org.eclipse.lsp4j.SemanticTokensDeltaParams;
 import org.eclipse.lsp4j.SemanticTokensParams;
+import org.eclipse.lsp4j.SemanticTokensRangeParams;
 import org.eclipse.lsp4j.SignatureHelp;
 import org.eclipse.lsp4j.SignatureHelpParams;
 import org.eclipse.lsp4j.SymbolInformation;
 import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
 import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.VersionedTextDocumentIdentifier;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.services.LanguageClient;
 import org.eclipse.lsp4j.services.TextDocumentService;
 
 import som.langserv.lint.FileLinter;
-import som.langserv.lint.WorkspaceLinter;
 import som.langserv.structure.DocumentStructures;
 
 
@@ -48,41 +58,127 @@ import som.langserv.structure.DocumentStructures;
  */
 public class DocumentServiceImpl implements TextDocumentService {
 
+  /** Key for the reloading of changed files in the {@link ParseScheduler}. */
+  private static final String WATCHED_FILES = "workspace/didChangeWatchedFiles";
+
   private final LanguageAdapter[] adapters;
 
+  private final TextDocuments   documents;
+  private final ParseScheduler  parser;
+  private final RequestExecutor requests;
+
+  /** Files changed on disk that still need to be reloaded, with the last change. */
+  private final Map<String, FileChangeType> changedFiles;
+
   private LanguageClient client;
 
-  public DocumentServiceImpl(final LanguageAdapter[] adapters) {
+  public DocumentServiceImpl(final LanguageAdapter[] adapters,
+      final RequestExecutor requests) {
     this.adapters = adapters;
+    this.documents = new TextDocuments();
+    this.parser = new ParseScheduler();
+    this.requests = requests;
+    this.changedFiles = new LinkedHashMap<>();
   }
 
   public void connect(final LanguageClient client) {
     this.client = client;
   }
 
+  public void shutdown() {
+    parser.shutdown();
+  }
+
   @Override
   public void didOpen(final DidOpenTextDocumentParams params) {
-    parseDocument(params.getTextDocument().getUri(),
-        params.getTextDocument().getText());
+    TextDocumentItem doc = params.getTextDocument();
+    documents.open(doc.getUri(), doc.getText(), doc.getVersion());
+    parser.scheduleNow(doc.getUri(), () -> parseLatest(doc.getUri()));
   }
 
   @Override
   public void didChange(final DidChangeTextDocumentParams params) {
-    validateTextDocument(params.getTextDocument().getUri(),
+    VersionedTextDocumentIdentifier doc = params.getTextDocument();
+    Integer version = doc.getVersion();
+    validateTextDocument(doc.getUri(), version == null ? -1 : version,
         params.getContentChanges());
   }
 
   @Override
-  public void didClose(final DidCloseTextDocumentParams params) {}
+  public void didClose(final DidCloseTextDocumentParams params) {
+    documents.close(params.getTextDocument().getUri());
+  }
 
   @Override
   public void didSave(final DidSaveTextDocumentParams params) {}
 
-  private void parseDocument(final String documentUri, final String text) {
+  /**
+   * Reload files that were changed outside of the editor. Like edits, a burst
+   * of changes is coalesced, and the files are reloaded in one batch on the
+   * parser thread. Open documents are skipped, the editor has their content.
+   */
+  public void didChangeWatchedFiles(final List<FileEvent> changes) {
+    synchronized (changedFiles) {
+      for (FileEvent e : changes) {
+        // the last change decides whether a file is reloaded or removed
+        changedFiles.remove(e.getUri());
+        changedFiles.put(e.getUri(), e.getType());
+      }
+    }
+    parser.schedule(WATCHED_FILES, this::reloadChangedFiles);
+  }
+
+  private void reloadChangedFiles() {
+    List<Map.Entry<String, FileChangeType>> changes;
+    synchronized (changedFiles) {
+      changes = new ArrayList<>(changedFiles.entrySet());
+      changedFiles.clear();
+    }
+
+    for (LanguageAdapter adapter : adapters) {
+      List<String> changed = new ArrayList<>();
+      List<String> deleted = new ArrayList<>();
+      for (var e : changes) {
+        String uri = e.getKey();
+        if (documents.isOpen(uri)) {
+          continue;
+        }
+
+        if (e.getValue() == FileChangeType.Deleted) {
+          // may be a folder, each adapter removes the documents in it
+          deleted.add(uri);
+        } else if (adapter.handlesUri(uri)) {
+          changed.add(uri);
+        }
+      }
+
+      if (!changed.isEmpty() || !deleted.isEmpty()) {
+        adapter.updateFiles(changed, deleted, documents::isOpen);
+      }
+    }
+  }
+
+  /**
+   * Parse the latest version of the document. This is run by the
+   * {@link ParseScheduler}, so changes that arrived in the meantime are included.
+   */
+  private void parseLatest(final String documentUri) {
+    // read the version first, the text may only be newer
+    int version = documents.getVersion(documentUri);
+    String text = documents.getText(documentUri);
+    if (text == null) {
+      // document was closed in the meantime
+      return;
+    }
+    parseDocument(documentUri, text, version);
+  }
+
+  private void parseDocument(final String documentUri, final String text,
+      final int version) {
     try {
       for (LanguageAdapter adapter : adapters) {
         if (adapter.handlesUri(documentUri)) {
-          DocumentStructures structures = adapter.parse(text, documentUri);
+          DocumentStructures structures = adapter.parse(text, documentUri, version);
 
           URI uri = new URI(documentUri).normalize();
           String filePath = uri.getPath();
@@ -91,11 +187,13 @@ public class DocumentServiceImpl implements TextDocumentService {
             lint.lint(filePath, text, structures);
           }
 
-          for (WorkspaceLinter lint : adapter.getWorkspaceLinters()) {
-            lint.lint(adapter.getDocuments());
-          }
+          Collection<DocumentStructures> affected =
+              adapter.lintDocuments(List.of(structures));
 
-          reportDiagnostics(structures.getDiagnostics(), documentUri, client);
+          adapter.reportDiagnostics(structures.getDiagnostics(), documentUri);
+          for (DocumentStructures other : affected) {
+            adapter.reportDiagnostics(other.getDiagnostics(), other.getUri());
+          }
           return;
         }
       }
@@ -105,152 +203,155 @@ public class DocumentServiceImpl implements TextDocumentService {
     }
   }
 
-  public static void reportDiagnostics(final List<Diagnostic> diagnostics,
-      final String documentUri, final LanguageClient client) {
-    PublishDiagnosticsParams result = new PublishDiagnosticsParams();
-    result.setUri(documentUri);
-
-    if (diagnostics != null) {
-      for (var d : diagnostics) {
-        assert d.getRange() != null;
-      }
+  private void validateTextDocument(final String documentUri, final int version,
+      final List<? extends TextDocumentContentChangeEvent> list) {
+    if (list.isEmpty()) {
+      return;
+    }
 
-      result.setDiagnostics(diagnostics);
-    } else {
-      result.setDiagnostics(new ArrayList<>());
+    if (!documents.change(documentUri, version, list)) {
+      ServerLauncher.logErr(
+          "[SOM LS] Received incremental change for unknown document: " + documentUri);
+      return;
     }
 
-    client.publishDiagnostics(result);
+    parser.schedule(documentUri, () -> parseLatest(documentUri));
   }
 
-  private void validateTextDocument(final String documentUri,
-      final List<? extends TextDocumentContentChangeEvent> list) {
-    TextDocumentContentChangeEvent e = list.iterator().next();
+  /**
+   * Run the request with the responsible adapter on a worker thread, once the
+   * latest version of the document is parsed.
+   */
+  private <T> CompletableFuture<T> whenParsed(final TextDocumentIdentifier docId,
+      final Function<LanguageAdapter, T> request) {
+    return whenParsed(docId, (adapter, cancelChecker) -> request.apply(adapter));
+  }
+
+  /**
+   * Run the request like {@link #whenParsed(TextDocumentIdentifier, Function)}.
+   * The request should use the {@link CancelChecker} in its long loops.
+   */
+  private <T> CompletableFuture<T> whenParsed(final TextDocumentIdentifier docId,
+      final BiFunction<LanguageAdapter, CancelChecker, T> request) {
+    var adapter = getResponsibleAdapter(docId);
+    if (adapter == null) {
+      return CompletableFuture.completedFuture(null);
+    }
 
-    parseDocument(documentUri, e.getText());
+    return requests.computeAfter(parser.whenParsed(docId.getUri()),
+        cancelChecker -> request.apply(adapter, cancelChecker));
   }
 
   @Override
   public CompletableFuture<SemanticTokens> semanticTokensFull(
       final SemanticTokensParams params) {
-    var adapter = getResponsibleAdapter(params.getTextDocument());
-    if (adapter == null) {
-      return null;
-    }
+    return whenParsed(params.getTextDocument(),
+        adapter -> adapter.getSemanticTokensFull(params.getTextDocument().getUri()));
+  }
 
-    List<Integer> tokens = adapter.getSemanticTokensFull(params.getTextDocument().getUri());
-    if (tokens == null) {
-      return null;
-    }
-    return CompletableFuture.completedFuture(new SemanticTokens(tokens));
+  @Override
+  public CompletableFuture<Either<SemanticTokens, SemanticTokensDelta>> semanticTokensFullDelta(
+      final SemanticTokensDeltaParams params) {
+    return whenParsed(params.getTextDocument(),
+        adapter -> adapter.getSemanticTokensFullDelta(params.getTextDocument().getUri(),
+            params.getPreviousResultId()));
+  }
+
+  @Override
+  public CompletableFuture<SemanticTokens> semanticTokensRange(
+      final SemanticTokensRangeParams params) {
+    return whenParsed(params.getTextDocument(),
+        adapter -> adapter.getSemanticTokensRange(params.getTextDocument().getUri(),
+            params.getRange()));
   }
 
   @Override
   public CompletableFuture<Either<List<CompletionItem>, CompletionList>> completion(
       final CompletionParams params) {
-    var adapter = getResponsibleAdapter(params.getTextDocument());
-    if (adapter != null) {
-      String uri = params.getTextDocument().getUri();
-      CompletionList result = adapter.getCompletions(uri, params.getPosition());
-      return CompletableFuture.completedFuture(Either.forRight(result));
-    }
+    String uri = params.getTextDocument().getUri();
+    // a completion request supersedes the previous one, the user typed on
+    return requests.supersede("completion " + uri,
+        whenParsed(params.getTextDocument(), (adapter, cancelChecker) -> {
+          CompletionList result =
+              adapter.getCompletions(uri, params.getPosition(), true, cancelChecker);
+          return Either.forRight(result);
+        }));
+  }
 
-    return CompletableFuture.completedFuture(null);
+  @Override
+  public CompletableFuture<CompletionItem> resolveCompletionItem(
+      final CompletionItem unresolved) {
+    return requests.compute(cancelChecker -> {
+      for (LanguageAdapter adapter : adapters) {
+        if (adapter.resolveCompletionItem(unresolved)) {
+          break;
+        }
+      }
+      return unresolved;
+    });
   }
 
   @Override
   public CompletableFuture<List<? extends DocumentHighlight>> documentHighlight(
       final DocumentHighlightParams params) {
-    var adapter = getResponsibleAdapter(params.getTextDocument());
-    if (adapter != null) {
+    return whenParsed(params.getTextDocument(), adapter -> {
       String uri = params.getTextDocument().getUri();
-      List<DocumentHighlight> highlights =
-          adapter.getHighlight(uri, params.getPosition());
-      return CompletableFuture.completedFuture(highlights);
-    }
-
-    return CompletableFuture.completedFuture(null);
+      return adapter.getHighlight(uri, params.getPosition());
+    });
   }
 
   @Override
   public CompletableFuture<List<? extends Location>> references(
       final ReferenceParams params) {
-    var adapter = getResponsibleAdapter(params.getTextDocument());
-    if (adapter != null) {
-      List<Location> result = adapter.getReferences(params.getTextDocument().getUri(),
-          params.getPosition(), params.getContext().isIncludeDeclaration());
-      return CompletableFuture.completedFuture(result);
-    }
-
-    return CompletableFuture.completedFuture(null);
+    return whenParsed(params.getTextDocument(),
+        (adapter, cancelChecker) -> adapter.getReferences(params.getTextDocument().getUri(),
+            params.getPosition(), params.getContext().isIncludeDeclaration(),
+            cancelChecker));
   }
 
   @Override
   public CompletableFuture<List<Either<SymbolInformation, DocumentSymbol>>> documentSymbol(
       final DocumentSymbolParams params) {
-    var adapter = getResponsibleAdapter(params.getTextDocument());
-    if (adapter != null) {
+    return whenParsed(params.getTextDocument(), adapter -> {
       var result = adapter.documentSymbol(params.getTextDocument().getUri());
 
-      ArrayList<Either<SymbolInformation, DocumentSymbol>> eitherList =
+      List<Either<SymbolInformation, DocumentSymbol>> eitherList =
           new ArrayList<>(result.size());
       for (DocumentSymbol s : result) {
         eitherList.add(Either.forRight(s));
       }
-      return CompletableFuture.completedFuture(eitherList);
-    }
-
-    return CompletableFuture.completedFuture(null);
+      return eitherList;
+    });
   }
 
   @Override
   public CompletableFuture<List<? extends CodeLens>> codeLens(final CodeLensParams params) {
-    var adapter = getResponsibleAdapter(params.getTextDocument());
-    if (adapter != null) {
-      String uri = params.getTextDocument().getUri();
-      List<CodeLens> result = adapter.getCodeLenses(uri);
-      return CompletableFuture.completedFuture(result);
-    }
-    return CompletableFuture.completedFuture(null);
+    return whenParsed(params.getTextDocument(),
+        adapter -> adapter.getCodeLenses(params.getTextDocument().getUri()));
   }
 
   @Override
   public CompletableFuture<Hover> hover(final HoverParams params) {
-    var adapter = getResponsibleAdapter(params.getTextDocument());
-    if (adapter != null) {
-      String uri = params.getTextDocument().getUri();
-      Hover result = adapter.hover(uri, params.getPosition());
-      return CompletableFuture.completedFuture(result);
-    }
-
-    return CompletableFuture.completedFuture(null);
+    return whenParsed(params.getTextDocument(),
+        adapter -> adapter.hover(params.getTextDocument().getUri(), params.getPosition()));
   }
 
   @Override
   public CompletableFuture<SignatureHelp> signatureHelp(final SignatureHelpParams params) {
-    var adapter = getResponsibleAdapter(params.getTextDocument());
-    if (adapter != null) {
+    return whenParsed(params.getTextDocument(), adapter -> {
       String uri = params.getTextDocument().getUri();
-      SignatureHelp help =
-          adapter.signatureHelp(uri, params.getPosition(), params.getContext());
-      return CompletableFuture.completedFuture(help);
-    }
-
-    return CompletableFuture.completedFuture(null);
+      return adapter.signatureHelp(uri, params.getPosition(), params.getContext());
+    });
   }
 
   @Override
   public CompletableFuture<Either<List<? extends Location>, List<? extends LocationLink>>> definition(
       final DefinitionParams params) {
-    var adapter = getResponsibleAdapter(params.getTextDocument());
-    if (adapter == null) {
-      return CompletableFuture.completedFuture(null);
-    }
-
-    String uri = params.getTextDocument().getUri();
-    List<? extends LocationLink> result = adapter.getDefinitions(uri, params.getPosition());
-
-    return CompletableFuture.completedFuture(Either.forRight(result));
+    return whenParsed(params.getTextDocument(), adapter -> {
+      String uri = params.getTextDocument().getUri();
+      List<? extends LocationLink> result = adapter.getDefinitions(uri, params.getPosition());
+      return Either.forRight(result);
+    });
   }
 
   private LanguageAdapter getResponsibleAdapter(final TextDocumentIdentifier docId) {
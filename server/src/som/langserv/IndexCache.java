@@ -0,0 +1,220 @@
+package som.langserv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import som.langserv.structure.DocumentStructures;
+import som.langserv.structure.LanguageElementId;
+import som.langserv.structure.StructuresCodec;
+
+
+/**
+ * Caches the structures of workspace files on disk, so that unchanged files
+ * do not need to be parsed again when the server is restarted.
+ *
+ * There is one cache file per source file, named after the hash of its path.
+ * An entry is only used if the content of the file has the same hash, and if
+ * the key of the adapter is unchanged, which covers the language version and
+ * the core library used.
+ */
+public class IndexCache {
+  private static final String DIR_PROP = "som.langserv.index-cache";
+
+  /** Increment when the format of the cache files changes. */
+  private static final int FORMAT_VERSION = 1;
+
+  private final Path   dir;
+  private final String adapterKey;
+
+  public IndexCache(final Path dir, final String adapterKey) {
+    this.dir = dir;
+    this.adapterKey = adapterKey;
+  }
+
+  /**
+   * @return the directory for the cache files of the given language, or
+   *         {@code null} if caching is disabled by setting the property to an
+   *         empty string
+   */
+  public static Path getDefaultDirectory(final String language) {
+    String dir = System.getProperty(DIR_PROP);
+    if (dir == null) {
+      dir = System.getProperty("user.home") + File.separator + ".cache" + File.separator
+          + "som-language-server";
+    } else if (dir.isEmpty()) {
+      return null;
+    }
+    return Path.of(dir, language);
+  }
+
+  /**
+   * @return a string identifying the build of the code that contains the given
+   *         class, based on the location and modification time of its jar or
+   *         class file
+   */
+  public static String versionOf(final Class<?> clazz) {
+    URL location = clazz.getResource(clazz.getSimpleName() + ".class");
+    if (location == null) {
+      return clazz.getName();
+    }
+
+    try {
+      if ("jar".equals(location.getProtocol())) {
+        location = clazz.getProtectionDomain().getCodeSource().getLocation();
+      }
+      File file = new File(location.toURI());
+      return file + "@" + file.lastModified();
+    } catch (URISyntaxException | IllegalArgumentException | SecurityException e) {
+      return clazz.getName();
+    }
+  }
+
+  /**
+   * @return the cached structures, or {@code null} if there is no valid entry
+   *         for the given content
+   */
+  public DocumentStructures load(final String normalizedPath, final byte[] content,
+      final Function<String, LanguageElementId> decodeId) {
+    Path file = getCacheFile(normalizedPath);
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != FORMAT_VERSION || !adapterKey.equals(in.readUTF())
+          || !normalizedPath.equals(in.readUTF())) {
+        return null;
+      }
+
+      byte[] hash = new byte[in.readInt()];
+      in.readFully(hash);
+      if (!Arrays.equals(hash, hash(content))) {
+        return null;
+      }
+
+      return StructuresCodec.read(in, decodeId);
+    } catch (IOException | RuntimeException e) {
+      // a broken entry is simply ignored, and overwritten after parsing
+      return null;
+    }
+  }
+
+  public void store(final String normalizedPath, final byte[] content,
+      final DocumentStructures structures, final Function<LanguageElementId, String> encodeId) {
+    Path file = getCacheFile(normalizedPath);
+    Path tmp = null;
+    try {
+      Files.createDirectories(dir);
+      tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(adapterKey);
+        out.writeUTF(normalizedPath);
+
+        byte[] hash = hash(content);
+        out.writeInt(hash.length);
+        out.write(hash);
+
+        StructuresCodec.write(structures, out, encodeId);
+      }
+
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      ServerLauncher.logErr(
+          "[SOM LS] Failed to cache structures of " + normalizedPath + ": " + e.getMessage());
+      if (tmp != null) {
+        try {
+          Files.deleteIfExists(tmp);
+        } catch (IOException e1) {}
+      }
+    }
+  }
+
+  /**
+   * Delete the entries of files that do not exist anymore, because they were
+   * deleted or renamed, and entries in an outdated format. Entries of other
+   * workspaces stay, as long as their files exist.
+   *
+   * @return the number of deleted entries
+   */
+  public int pruneMissingFiles() {
+    if (!Files.isDirectory(dir)) {
+      return 0;
+    }
+
+    int pruned = 0;
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, "*.idx")) {
+      for (Path entry : entries) {
+        if (isStale(entry) && Files.deleteIfExists(entry)) {
+          pruned += 1;
+        }
+      }
+    } catch (IOException | DirectoryIteratorException e) {
+      ServerLauncher.logErr("[SOM LS] Failed to prune index cache: " + e.getMessage());
+    }
+    return pruned;
+  }
+
+  private static boolean isStale(final Path entry) {
+    String normalizedPath;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        return true;
+      }
+      in.readUTF();
+      normalizedPath = in.readUTF();
+    } catch (IOException e) {
+      // a broken entry would only be overwritten after parsing
+      return true;
+    }
+
+    try {
+      return !new File(new URI("file", null, normalizedPath, null)).isFile();
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return true;
+    }
+  }
+
+  private Path getCacheFile(final String normalizedPath) {
+    return dir.resolve(toHex(hash(normalizedPath.getBytes(StandardCharsets.UTF_8))) + ".idx");
+  }
+
+  private static byte[] hash(final byte[] content) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(content);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(final byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+      sb.append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+}
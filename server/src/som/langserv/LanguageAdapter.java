@@ -1,6 +1,9 @@
 package som.langserv;
 
 import static som.langserv.structure.SemanticTokens.combineTokensRemovingErroneousLine;
+import static som.langserv.structure.SemanticTokens.computeEdit;
+import static som.langserv.structure.SemanticTokens.makeRelativeTo00;
+import static som.langserv.structure.SemanticTokens.selectLines;
 
 import java.io.File;
 import java.io.IOException;
@@ -8,46 +11,117 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 import org.eclipse.lsp4j.CodeLens;
 import org.eclipse.lsp4j.CompletionItem;
 import org.eclipse.lsp4j.CompletionList;
 import org.eclipse.lsp4j.Diagnostic;
 import org.eclipse.lsp4j.DocumentHighlight;
+import org.eclipse.lsp4j.DocumentSymbol;
 import org.eclipse.lsp4j.Hover;
 import org.eclipse.lsp4j.Location;
 import org.eclipse.lsp4j.LocationLink;
 import org.eclipse.lsp4j.MessageParams;
 import org.eclipse.lsp4j.MessageType;
 import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SemanticTokens;
+import org.eclipse.lsp4j.SemanticTokensDelta;
+import org.eclipse.lsp4j.SemanticTokensEdit;
 import org.eclipse.lsp4j.SignatureHelp;
 import org.eclipse.lsp4j.SignatureHelpContext;
 import org.eclipse.lsp4j.SymbolInformation;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.services.LanguageClient;
 
+import com.google.gson.JsonPrimitive;
+
 import som.langserv.lens.FileLens;
 import som.langserv.lint.FileLinter;
 import som.langserv.lint.WorkspaceLinter;
+import som.langserv.structure.CompletionCollector;
+import som.langserv.structure.CompletionIndex;
+import som.langserv.structure.DefinitionIndex;
+import som.langserv.structure.DocumentIndex;
 import som.langserv.structure.DocumentStructures;
 import som.langserv.structure.LanguageElement;
+import som.langserv.structure.LanguageElementId;
 import som.langserv.structure.Pair;
 import som.langserv.structure.ParseContextKind;
-import som.langserv.structure.SemanticTokens;
+import som.langserv.structure.ReferenceIndex;
+import som.langserv.structure.SymbolIndex;
 import util.ArrayListIgnoreIfLastIdentical;
+import util.PackedIntList;
 
 
 public abstract class LanguageAdapter {
+  private static final int MAX_COMPLETION_ITEMS =
+      Integer.getInteger("som.langserv.max-completion-items", 200);
+
+  /** For requests that are not run on behalf of the client. */
+  public static final CancelChecker NOT_CANCELABLE = () -> {};
+
+  /** Unique across adapters, to find the one that can resolve an item. */
+  private static final AtomicLong NEXT_COMPLETION_RESULT_ID = new AtomicLong();
+
+  /**
+   * Number of lazy completion lists of which items can still be resolved.
+   * The client may resolve items of a list after it requested the next one.
+   */
+  private static final int MAX_RESOLVABLE_COMPLETIONS = 8;
+
   protected LanguageClient client;
+  private DiagnosticsPublisher diagnostics;
 
+  /** The latest frozen structures of each document, read without locking. */
   private final Map<String, DocumentStructures> structures;
 
-  private final Map<String, List<int[]>> semanticTokenCache;
+  /**
+   * Normalized paths of the published structures the workspace linters did not
+   * see yet, see {@link #lintDocuments}.
+   */
+  private final Set<String> unlinted;
+
+  /** Versions of the documents that are being parsed, by normalized path. */
+  private final Map<String, Integer> parsingVersions;
+
+  private final Map<String, PackedIntList> semanticTokenCache;
+
+  /** The last encoded semantic tokens sent per document, with their result id. */
+  private final Map<String, Pair<String, PackedIntList>> sentSemanticTokens;
+
+  private final AtomicLong nextSemanticTokensResultId;
+
+  private volatile IndexCache indexCache;
+
+  /** The elements of the recent lazy completion lists, by result id. */
+  private final Map<Long, List<LanguageElement>> recentCompletions;
+
+  private final SymbolIndex     symbolIndex;
+  private final ReferenceIndex  referenceIndex;
+  private final DefinitionIndex definitionIndex;
+  private final CompletionIndex completionIndex;
+
+  /** The indexes above, which are updated together. */
+  private final DocumentIndex<?>[] indexes;
 
   private final FileLinter[]      fileLinters;
   private final WorkspaceLinter[] workspaceLinters;
@@ -61,8 +135,26 @@ public abstract class LanguageAdapter {
 
   public LanguageAdapter(final FileLinter[] fileLinters,
       final WorkspaceLinter[] workspaceLinters, final FileLens[] fileLenses) {
-    this.structures = new LinkedHashMap<>();
-    this.semanticTokenCache = new HashMap<>();
+    this.structures = new ConcurrentHashMap<>();
+    this.parsingVersions = new ConcurrentHashMap<>();
+    this.semanticTokenCache = new ConcurrentHashMap<>();
+    this.symbolIndex = new SymbolIndex();
+    this.referenceIndex = new ReferenceIndex();
+    this.definitionIndex = new DefinitionIndex();
+    this.completionIndex = new CompletionIndex();
+    this.indexes = new DocumentIndex<?>[] {
+        symbolIndex, referenceIndex, definitionIndex, completionIndex};
+    this.sentSemanticTokens = new ConcurrentHashMap<>();
+    this.nextSemanticTokensResultId = new AtomicLong();
+    this.unlinted = ConcurrentHashMap.newKeySet();
+    this.recentCompletions = Collections.synchronizedMap(new LinkedHashMap<>() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Long, List<LanguageElement>> e) {
+        return size() > MAX_RESOLVABLE_COMPLETIONS;
+      }
+    });
     this.fileLinters = fileLinters;
     this.workspaceLinters = workspaceLinters;
     this.fileLenses = fileLenses;
@@ -76,11 +168,23 @@ public abstract class LanguageAdapter {
     return workspaceLinters;
   }
 
+  /**
+   * Freeze and publish the structures of a parsed document, and update the
+   * indexes with them. The update holds the lock of the path in the map of
+   * structures, so that concurrent updates of a document cannot leave the
+   * indexes with different versions of it.
+   */
   protected void putStructures(final String normalizedPath,
       final DocumentStructures docStructures) {
-    synchronized (structures) {
-      structures.put(normalizedPath, docStructures);
-    }
+    docStructures.freeze(
+        parsingVersions.getOrDefault(normalizedPath, DocumentStructures.UNVERSIONED));
+    structures.compute(normalizedPath, (path, previous) -> {
+      for (DocumentIndex<?> index : indexes) {
+        index.update(path, docStructures);
+      }
+      return docStructures;
+    });
+    unlinted.add(normalizedPath);
   }
 
   public abstract String getFileEnding();
@@ -90,54 +194,302 @@ public abstract class LanguageAdapter {
   }
 
   public void connect(final LanguageClient client) {
+    connect(client, new DiagnosticsPublisher(client));
+  }
+
+  /** Connect to the client, publishing diagnostics with a shared publisher. */
+  public void connect(final LanguageClient client, final DiagnosticsPublisher diagnostics) {
     this.client = client;
+    this.diagnostics = diagnostics;
   }
 
-  public Object loadWorkspace(final String uri) throws URISyntaxException {
-    if (uri == null) {
-      return null;
+  /**
+   * @return true if {@link #parse(String, String)} can be called from multiple
+   *         threads at the same time
+   */
+  public boolean supportsParallelParsing() {
+    return false;
+  }
+
+  /**
+   * Load the given workspace files on the pool and lint the workspace
+   * afterwards. Without support for parallel parsing, the files are loaded one
+   * after another in a single task. Finally, the index cache forgets files
+   * that were deleted or renamed since it was last used.
+   */
+  public CompletableFuture<Void> indexWorkspace(final List<File> files,
+      final Executor indexingPool) {
+    if (!supportsParallelParsing()) {
+      return CompletableFuture.runAsync(() -> indexSequentially(files), indexingPool);
     }
 
-    URI workspaceUri = new URI(uri);
-    File workspace = new File(workspaceUri);
-    assert workspace.isDirectory();
+    CompletableFuture<?>[] loaded = new CompletableFuture<?>[files.size()];
+    for (int i = 0; i < loaded.length; i += 1) {
+      File f = files.get(i);
+      loaded[i] = CompletableFuture.runAsync(() -> loadFileIgnoringErrors(f), indexingPool);
+    }
+    return CompletableFuture.allOf(loaded).thenRun(() -> {
+      lintWorkspace();
+      pruneIndexCache();
+    });
+  }
 
-    Thread t = new Thread(() -> loadWorkspaceAndLint(workspace));
-    t.start();
-    return t;
+  /**
+   * Load the files one after another, lint the workspace, and prune the index
+   * cache. Adapters that need to index on a thread of their own call this from
+   * their {@link #indexWorkspace}.
+   */
+  protected void indexSequentially(final List<File> files) {
+    loadFiles(files);
+    lintWorkspace();
+    pruneIndexCache();
+  }
+
+  private void pruneIndexCache() {
+    IndexCache cache = indexCache;
+    if (cache != null) {
+      cache.pruneMissingFiles();
+    }
   }
 
-  protected void loadWorkspaceAndLint(final File workspace) {
-    loadFolder(workspace);
+  protected void lintWorkspace() {
+    unlinted.clear();
+    Map<String, DocumentStructures> docs = new HashMap<>(structures);
 
     for (WorkspaceLinter l : workspaceLinters) {
-      l.lint(structures.values());
+      l.lint(docs.values());
     }
 
-    for (var s : structures.entrySet()) {
-      DocumentServiceImpl.reportDiagnostics(s.getValue().getDiagnostics(), s.getKey(), client);
+    for (var s : docs.entrySet()) {
+      reportDiagnostics(s.getValue().getDiagnostics(), s.getKey());
     }
   }
 
-  public void loadFolder(final File folder) {
-    for (File f : folder.listFiles()) {
-      if (f.isDirectory()) {
-        loadFolder(f);
-      } else if (f.getName().endsWith(getFileEnding())) {
-        try {
-          loadFile(f);
-        } catch (IOException | URISyntaxException e) {
-          // if loading fails, we don't do anything, just move on to the next file
-        }
+  /**
+   * Reload workspace files that changed on disk, and forget deleted ones.
+   * Instead of linting the whole workspace, only the reloaded documents, and
+   * the documents whose diagnostics depend on them, are linted and reported.
+   *
+   * @param changedUris files that were created or changed
+   * @param deletedUris files or folders that were deleted
+   * @param isOpen whether a document is open in the editor, which has its
+   *          content, so that it is kept when its folder is deleted
+   */
+  public void updateFiles(final List<String> changedUris, final List<String> deletedUris,
+      final Predicate<String> isOpen) {
+    Set<DocumentStructures> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (String uri : deletedUris) {
+      if (handlesUri(uri)) {
+        affected.addAll(removeStructures(uri));
+      } else {
+        affected.addAll(removeFolder(uri, isOpen));
+      }
+    }
+
+    Map<String, DocumentStructures> loaded = new LinkedHashMap<>();
+    for (String uri : changedUris) {
+      File f;
+      try {
+        f = new File(new URI(uri));
+      } catch (URISyntaxException | IllegalArgumentException e) {
+        ServerLauncher.logErr("[SOM LS] Cannot reload " + uri + ": " + e.getMessage());
+        continue;
+      }
+
+      try {
+        loaded.put(uri, loadFile(f));
+      } catch (NoSuchFileException e) {
+        // deleted again before we got to it
+        affected.addAll(removeStructures(uri));
+      } catch (IOException | URISyntaxException e) {
+        ServerLauncher.logErr("[SOM LS] Cannot reload " + uri + ": " + e.getMessage());
+      }
+    }
+
+    affected.addAll(lintDocuments(loaded.values()));
+
+    for (var e : loaded.entrySet()) {
+      reportDiagnostics(e.getValue().getDiagnostics(), e.getKey());
+      affected.remove(e.getValue());
+    }
+
+    // documents may have been affected by one change, and removed by another
+    Set<DocumentStructures> current = Collections.newSetFromMap(new IdentityHashMap<>());
+    current.addAll(structures.values());
+    for (DocumentStructures doc : affected) {
+      if (current.contains(doc)) {
+        reportDiagnostics(doc.getDiagnostics(), doc.getUri());
       }
     }
   }
 
+  /**
+   * Lint the given documents with the workspace linters, together with the
+   * published structures the linters did not see yet. Otherwise, structures
+   * that are only published, like the primitives of the Newspeak VM mirror,
+   * remain unknown to the linters until the workspace is indexed.
+   *
+   * @return the other documents of which the diagnostics changed
+   */
+  public Collection<DocumentStructures> lintDocuments(
+      final Collection<DocumentStructures> docs) {
+    Map<String, DocumentStructures> toLint = new LinkedHashMap<>();
+    for (Iterator<String> i = unlinted.iterator(); i.hasNext();) {
+      DocumentStructures doc = structures.get(i.next());
+      i.remove();
+      if (doc != null) {
+        toLint.put(doc.getNormalizedUri(), doc);
+      }
+    }
+
+    // unseen structures are affected, unless a given document replaces them
+    Set<DocumentStructures> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+    affected.addAll(toLint.values());
+    for (DocumentStructures doc : docs) {
+      affected.remove(toLint.put(doc.getNormalizedUri(), doc));
+    }
+
+    for (WorkspaceLinter l : workspaceLinters) {
+      affected.addAll(l.lint(toLint.values()));
+    }
+    return affected;
+  }
+
+  /**
+   * Forget a document that was deleted, and clear its diagnostics.
+   *
+   * @return the other documents of which the diagnostics changed
+   */
+  public Collection<DocumentStructures> removeStructures(final String documentUri) {
+    try {
+      return removeStructures(docUriToNormalizedPath(documentUri), documentUri);
+    } catch (URISyntaxException e) {
+      return List.of();
+    }
+  }
+
+  /** Forget all documents in a folder that was deleted, except open ones. */
+  private Collection<DocumentStructures> removeFolder(final String folderUri,
+      final Predicate<String> isOpen) {
+    String prefix;
+    try {
+      prefix = docUriToNormalizedPath(folderUri);
+    } catch (URISyntaxException e) {
+      return List.of();
+    }
+    if (!prefix.endsWith("/")) {
+      prefix += "/";
+    }
+
+    Set<DocumentStructures> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (var e : structures.entrySet()) {
+      String uri = e.getValue().getUri();
+      if (e.getKey().startsWith(prefix) && !isOpen.test(uri)) {
+        affected.addAll(removeStructures(e.getKey(), uri));
+      }
+    }
+    return affected;
+  }
+
+  private Collection<DocumentStructures> removeStructures(final String path,
+      final String documentUri) {
+    DocumentStructures[] removedRef = new DocumentStructures[1];
+    structures.computeIfPresent(path, (p, previous) -> {
+      for (DocumentIndex<?> index : indexes) {
+        index.remove(p);
+      }
+      removedRef[0] = previous;
+      return null;
+    });
+
+    DocumentStructures removed = removedRef[0];
+    if (removed == null) {
+      return List.of();
+    }
+
+    semanticTokenCache.remove(documentUri);
+    sentSemanticTokens.remove(documentUri);
+
+    Set<DocumentStructures> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (WorkspaceLinter l : workspaceLinters) {
+      affected.addAll(l.remove(removed.getNormalizedUri()));
+    }
+
+    reportDiagnostics(null, documentUri);
+    return affected;
+  }
+
+  protected void loadFiles(final List<File> files) {
+    for (File f : files) {
+      loadFileIgnoringErrors(f);
+    }
+  }
+
+  private void loadFileIgnoringErrors(final File f) {
+    try {
+      loadFile(f);
+    } catch (IOException | URISyntaxException e) {
+      // if loading fails, we don't do anything, just move on to the next file
+    }
+  }
+
+  /**
+   * Load a file of the workspace. If the index cache is enabled, and has an
+   * entry for the current content of the file, the file is not parsed.
+   */
   public DocumentStructures loadFile(final File f) throws IOException, URISyntaxException {
     byte[] content = Files.readAllBytes(f.toPath());
-    String str = new String(content, StandardCharsets.UTF_8);
     String uri = f.toURI().toString();
-    return parse(str, uri);
+
+    IndexCache cache = indexCache;
+    if (cache == null) {
+      return parseFile(new String(content, StandardCharsets.UTF_8), uri);
+    }
+
+    String path = docUriToNormalizedPath(uri);
+    DocumentStructures structures = cache.load(path, content, this::decodeId);
+    if (structures != null) {
+      putStructures(path, structures);
+      return structures;
+    }
+
+    structures = parseFile(new String(content, StandardCharsets.UTF_8), uri);
+    cache.store(path, content, structures, this::encodeId);
+    return structures;
+  }
+
+  /** Parse a file while loading the workspace. */
+  protected DocumentStructures parseFile(final String text, final String uri)
+      throws URISyntaxException {
+    return parse(text, uri);
+  }
+
+  /** Cache the structures of workspace files in the given directory. */
+  public void enableIndexCache(final Path dir) {
+    indexCache = new IndexCache(dir, getIndexCacheKey());
+  }
+
+  /**
+   * @return a key that changes when cached structures become invalid, for
+   *         instance because the language implementation or the core library
+   *         changed
+   */
+  protected String getIndexCacheKey() {
+    return IndexCache.versionOf(getClass());
+  }
+
+  /**
+   * Encode ids that are meaningful across documents for the index cache.
+   *
+   * @return a key from which {@link #decodeId(String)} recreates an equal id,
+   *         or {@code null} if the id is only meaningful within its document
+   */
+  protected String encodeId(final LanguageElementId id) {
+    return null;
+  }
+
+  protected LanguageElementId decodeId(final String key) {
+    throw new IllegalArgumentException("Unknown id: " + key);
   }
 
   public static String docUriToNormalizedPath(final String documentUri)
@@ -149,24 +501,35 @@ public abstract class LanguageAdapter {
   public abstract DocumentStructures parse(final String text, final String sourceUri)
       throws URISyntaxException;
 
+  /**
+   * Parse the given version of an open document, and publish its structures
+   * as a snapshot of that version.
+   */
+  public final DocumentStructures parse(final String text, final String sourceUri,
+      final int version) throws URISyntaxException {
+    String path = docUriToNormalizedPath(sourceUri);
+    parsingVersions.put(path, version);
+    try {
+      return parse(text, sourceUri);
+    } finally {
+      parsingVersions.remove(path, version);
+    }
+  }
+
   public final DocumentStructures getStructures(final String documentUri) {
-    synchronized (structures) {
-      try {
-        return structures.get(docUriToNormalizedPath(documentUri));
-      } catch (URISyntaxException e) {
-        return null;
-      }
+    try {
+      return structures.get(docUriToNormalizedPath(documentUri));
+    } catch (URISyntaxException e) {
+      return null;
     }
   }
 
   protected final Collection<DocumentStructures> getDocuments() {
-    synchronized (structures) {
-      return new ArrayList<>(structures.values());
-    }
+    return new ArrayList<>(structures.values());
   }
 
   public void reportDiagnostics(final List<Diagnostic> diagnostics, final String documentUri) {
-    DocumentServiceImpl.reportDiagnostics(diagnostics, documentUri, client);
+    this.diagnostics.publish(documentUri, diagnostics);
   }
 
   public void reportError(final String msgStr) {
@@ -198,15 +561,32 @@ public abstract class LanguageAdapter {
 
   public final void workspaceSymbol(final List<SymbolInformation> results,
       final String query) {
-    var docs = getDocuments();
-    for (var doc : docs) {
-      doc.find(results, query);
-    }
+    workspaceSymbol(results, query, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Add the best matching definitions for the query.
+   *
+   * @param limit the maximum number of results to add
+   */
+  public final void workspaceSymbol(final List<SymbolInformation> results,
+      final String query, final int limit) {
+    workspaceSymbol(results, query, limit, NOT_CANCELABLE);
+  }
+
+  public final void workspaceSymbol(final List<SymbolInformation> results,
+      final String query, final int limit, final CancelChecker cancelChecker) {
+    symbolIndex.find(query, limit, results, cancelChecker);
   }
 
-  public final List<LanguageElement> documentSymbol(final String documentUri) {
+  public final List<DocumentSymbol> documentSymbol(final String documentUri) {
     DocumentStructures doc = getStructures(documentUri);
-    return doc.getRootSymbols();
+    List<LanguageElement> roots = doc.getRootSymbols();
+    List<DocumentSymbol> symbols = new ArrayList<>(roots.size());
+    for (LanguageElement e : roots) {
+      symbols.add(e.createDocumentSymbol());
+    }
+    return symbols;
   }
 
   public final Hover hover(final String uri, final Position position) {
@@ -228,18 +608,15 @@ public abstract class LanguageAdapter {
       return null;
     }
 
-    List<LocationLink> definitions = new ArrayList<>();
-    doc.lookupDefinitions(element, definitions);
-
-    for (DocumentStructures d : getDocuments()) {
-      // we already have those, so, skip this one
-      if (doc == d) {
-        continue;
-      }
-
-      d.lookupDefinitions(element, definitions);
+    String path;
+    try {
+      path = docUriToNormalizedPath(uri);
+    } catch (URISyntaxException e) {
+      return null;
     }
 
+    List<LocationLink> definitions = new ArrayList<>();
+    definitionIndex.lookup(element, path, definitions);
     return definitions;
   }
 
@@ -251,6 +628,11 @@ public abstract class LanguageAdapter {
 
   public final List<Location> getReferences(final String uri, final Position position,
       final boolean includeDeclaration) {
+    return getReferences(uri, position, includeDeclaration, NOT_CANCELABLE);
+  }
+
+  public final List<Location> getReferences(final String uri, final Position position,
+      final boolean includeDeclaration, final CancelChecker cancelChecker) {
     DocumentStructures doc = getStructures(uri);
     if (doc == null) {
       return null;
@@ -264,7 +646,8 @@ public abstract class LanguageAdapter {
 
     List<Location> result = new ArrayListIgnoreIfLastIdentical<>();
 
-    for (DocumentStructures d : getDocuments()) {
+    for (DocumentStructures d : referenceIndex.getDocuments(element.v1)) {
+      cancelChecker.checkCanceled();
       if (includeDeclaration) {
         d.lookupDefinitionsLocation(element, result);
       }
@@ -276,6 +659,20 @@ public abstract class LanguageAdapter {
   }
 
   public final CompletionList getCompletions(final String uri, final Position position) {
+    return getCompletions(uri, position, false, NOT_CANCELABLE);
+  }
+
+  public final CompletionList getCompletions(final String uri, final Position position,
+      final boolean lazy) {
+    return getCompletions(uri, position, lazy, NOT_CANCELABLE);
+  }
+
+  /**
+   * @param lazy if true, the items only have a label, a kind, and a handle as
+   *          data, and the details are added by {@link #resolveCompletionItem}
+   */
+  public final CompletionList getCompletions(final String uri, final Position position,
+      final boolean lazy, final CancelChecker cancelChecker) {
     DocumentStructures doc = getStructures(uri);
     Pair<ParseContextKind, String> element = doc.getPossiblyIncompleteElement(position);
 
@@ -283,42 +680,157 @@ public abstract class LanguageAdapter {
       return null;
     }
 
+    String path;
+    try {
+      path = docUriToNormalizedPath(uri);
+    } catch (URISyntaxException e) {
+      return null;
+    }
+
+    // the elements in scope are offered first, and win ties
+    var collector = new CompletionCollector(element.v2, MAX_COMPLETION_ITEMS, cancelChecker);
+    doc.find(element.v1, position, collector);
+    completionIndex.collect(element.v1, path, collector);
+
     CompletionList completion = new CompletionList();
-    completion.setIsIncomplete(false);
+    completion.setIsIncomplete(collector.isIncomplete());
+
+    if (!lazy) {
+      completion.setItems(collector.createItems());
+      return completion;
+    }
+
+    List<LanguageElement> elements = new ArrayList<>();
+    List<CompletionItem> items = collector.createItems(false, elements);
+    long resultId = NEXT_COMPLETION_RESULT_ID.incrementAndGet();
+    for (int i = 0; i < items.size(); i += 1) {
+      items.get(i).setData(resultId + ":" + i);
+    }
 
-    List<CompletionItem> items = new ArrayListIgnoreIfLastIdentical<>();
+    recentCompletions.put(resultId, elements);
     completion.setItems(items);
+    return completion;
+  }
 
-    doc.find(element.v2, element.v1, position, items);
+  /**
+   * Add the details to an item of a recent lazy completion list.
+   *
+   * @return false if the item is not from a recent list of this adapter
+   */
+  public final boolean resolveCompletionItem(final CompletionItem item) {
+    Object data = item.getData();
+    String handle;
+    if (data instanceof JsonPrimitive p) {
+      handle = p.getAsString();
+    } else if (data instanceof String s) {
+      handle = s;
+    } else {
+      return false;
+    }
 
-    for (DocumentStructures d : getDocuments()) {
-      if (d == doc) {
-        continue;
+    int sep = handle.indexOf(':');
+    if (sep < 0) {
+      return false;
+    }
+
+    try {
+      long resultId = Long.parseLong(handle.substring(0, sep));
+      int index = Integer.parseInt(handle.substring(sep + 1));
+      List<LanguageElement> elements = recentCompletions.get(resultId);
+      if (elements == null || index < 0 || index >= elements.size()) {
+        return false;
       }
 
-      d.find(element.v2, element.v1, position, items);
+      elements.get(index).resolveCompletionItem(item);
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
     }
-    return completion;
   }
 
-  public final List<Integer> getSemanticTokensFull(final String uri) {
+  public final SemanticTokens getSemanticTokensFull(final String uri) {
+    PackedIntList tokens = encodeSemanticTokens(uri);
+    if (tokens == null) {
+      return null;
+    }
+
+    String resultId = recordSentSemanticTokens(uri, tokens);
+    return new SemanticTokens(resultId, tokens);
+  }
+
+  /**
+   * Determine the change of the semantic tokens since the result with the
+   * given id. If that result is not the last one sent for the document, all
+   * tokens are returned instead.
+   */
+  public final Either<SemanticTokens, SemanticTokensDelta> getSemanticTokensFullDelta(
+      final String uri, final String previousResultId) {
+    Pair<String, PackedIntList> previous = sentSemanticTokens.get(uri);
+
+    PackedIntList tokens = encodeSemanticTokens(uri);
+    if (tokens == null) {
+      return null;
+    }
+
+    String resultId = recordSentSemanticTokens(uri, tokens);
+
+    if (previous == null || !previous.v1.equals(previousResultId)) {
+      return Either.forLeft(new SemanticTokens(resultId, tokens));
+    }
+
+    List<SemanticTokensEdit> edits = new ArrayList<>(1);
+    SemanticTokensEdit edit = computeEdit(previous.v2, tokens);
+    if (edit != null) {
+      edits.add(edit);
+    }
+    return Either.forRight(new SemanticTokensDelta(edits, resultId));
+  }
+
+  private String recordSentSemanticTokens(final String uri, final PackedIntList tokens) {
+    String resultId = Long.toString(nextSemanticTokensResultId.incrementAndGet());
+    sentSemanticTokens.put(uri, new Pair<>(resultId, tokens));
+    return resultId;
+  }
+
+  /**
+   * Encode only the tokens on the lines of the given range, for instance the
+   * part of the document visible in the editor.
+   */
+  public final SemanticTokens getSemanticTokensRange(final String uri, final Range range) {
+    PackedIntList tokens = getSortedSemanticTokens(uri);
+    if (tokens == null) {
+      return null;
+    }
+
+    PackedIntList inRange =
+        selectLines(tokens, range.getStart().getLine(), range.getEnd().getLine());
+    return new SemanticTokens(makeRelativeTo00(inRange));
+  }
+
+  private PackedIntList encodeSemanticTokens(final String uri) {
+    PackedIntList tokens = getSortedSemanticTokens(uri);
+    if (tokens == null) {
+      return null;
+    }
+    return makeRelativeTo00(tokens);
+  }
+
+  private PackedIntList getSortedSemanticTokens(final String uri) {
     DocumentStructures doc = getStructures(uri);
-    List<int[]> tokens = doc.getSemanticTokens().getSemanticTokens();
+    PackedIntList tokens = doc.getSemanticTokens().getPackedTokens();
 
     Diagnostic error = doc.getFirstErrorOrNull();
     if (error == null) {
       semanticTokenCache.put(uri, tokens);
-      return SemanticTokens.makeRelativeTo00(tokens);
+      return tokens;
     }
 
-    List<int[]> prevTokens = semanticTokenCache.get(uri);
+    PackedIntList prevTokens = semanticTokenCache.get(uri);
     if (prevTokens == null) {
       return null;
     }
 
-    List<int[]> withOldAndWithoutError =
-        combineTokensRemovingErroneousLine(
-            error.getRange().getStart(), prevTokens, tokens);
-    return SemanticTokens.makeRelativeTo00(withOldAndWithoutError);
+    return combineTokensRemovingErroneousLine(
+        error.getRange().getStart(), prevTokens, tokens);
   }
 }
@@ -1,17 +1,26 @@
 package som.langserv;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 import org.eclipse.lsp4j.CodeLensOptions;
 import org.eclipse.lsp4j.CompletionOptions;
+import org.eclipse.lsp4j.DidChangeWatchedFilesRegistrationOptions;
 import org.eclipse.lsp4j.ExecuteCommandOptions;
+import org.eclipse.lsp4j.FileSystemWatcher;
 import org.eclipse.lsp4j.InitializeParams;
 import org.eclipse.lsp4j.InitializeResult;
+import org.eclipse.lsp4j.InitializedParams;
 import org.eclipse.lsp4j.MessageParams;
 import org.eclipse.lsp4j.MessageType;
+import org.eclipse.lsp4j.Registration;
+import org.eclipse.lsp4j.RegistrationParams;
 import org.eclipse.lsp4j.SemanticTokensLegend;
 import org.eclipse.lsp4j.SemanticTokensServerFull;
 import org.eclipse.lsp4j.SemanticTokensWithRegistrationOptions;
@@ -37,6 +46,10 @@ import som.langserv.structure.SemanticTokenType;
 
 public class LanguageServerImpl implements LanguageServer, LanguageClientAware {
 
+  /** Watch files on the server, even if the client could watch them. */
+  private static final boolean SERVER_FILE_WATCHER =
+      Boolean.getBoolean("som.langserv.server-file-watcher");
+
   private final WorkspaceImpl   workspace;
   private final LanguageAdapter adapters[];
 
@@ -44,12 +57,30 @@ public class LanguageServerImpl implements LanguageServer, LanguageClientAware {
 
   private final DocumentServiceImpl documentService;
 
+  private final RequestExecutor requests;
+
+  private List<File> workspaceRoots;
+
+  /** Whether the client can watch files, and report changes to us. */
+  private boolean clientWatchesFiles;
+
+  private WorkspaceWatcher watcher;
+
   public LanguageServerImpl() {
     adapters = new LanguageAdapter[] {
         new NewspeakAdapter(), new SomAdapter(), new SimpleAdapter()};
 
-    workspace = new WorkspaceImpl(adapters);
-    this.documentService = new DocumentServiceImpl(adapters);
+    for (LanguageAdapter adapter : adapters) {
+      Path cacheDir = IndexCache.getDefaultDirectory(adapter.getFileEnding().substring(1));
+      if (cacheDir != null) {
+        adapter.enableIndexCache(cacheDir);
+      }
+    }
+
+    this.requests = new RequestExecutor();
+    this.documentService = new DocumentServiceImpl(adapters, requests);
+    workspace = new WorkspaceImpl(adapters, requests, documentService);
+    this.workspaceRoots = List.of();
   }
 
   @Override
@@ -69,13 +100,14 @@ public class LanguageServerImpl implements LanguageServer, LanguageClientAware {
     cap.setReferencesProvider(true);
     cap.setHoverProvider(true);
 
-    cap.setTextDocumentSync(TextDocumentSyncKind.Full);
+    cap.setTextDocumentSync(TextDocumentSyncKind.Incremental);
 
     cap.setExecuteCommandProvider(
         new ExecuteCommandOptions(Lists.newArrayList(Minitest.COMMAND)));
 
     result.setCapabilities(cap);
 
+    clientWatchesFiles = supportsWatchedFilesRegistration(params);
     loadWorkspace(params);
 
     return CompletableFuture.completedFuture(result);
@@ -108,7 +140,7 @@ public class LanguageServerImpl implements LanguageServer, LanguageClientAware {
     autoComplTrigger.add("="); // right-hand side of assignments
     autoComplTrigger.add("."); // . for simple language
     completion.setTriggerCharacters(autoComplTrigger);
-    completion.setResolveProvider(false); // TODO: look into that
+    completion.setResolveProvider(true);
 
     return completion;
   }
@@ -133,11 +165,11 @@ public class LanguageServerImpl implements LanguageServer, LanguageClientAware {
     SemanticTokensLegend legend = new SemanticTokensLegend(tokenTypes, tokenModifiers);
 
     semanticTokens.setLegend(legend);
-    semanticTokens.setRange(false);
+    semanticTokens.setRange(true);
 
     SemanticTokensServerFull serverFull = new SemanticTokensServerFull();
 
-    serverFull.setDelta(false);
+    serverFull.setDelta(true);
     semanticTokens.setFull(serverFull);
 
     return semanticTokens;
@@ -149,26 +181,84 @@ public class LanguageServerImpl implements LanguageServer, LanguageClientAware {
       return;
     }
 
+    List<File> roots = new ArrayList<>(folders.size());
+    for (WorkspaceFolder f : folders) {
+      try {
+        roots.add(new File(new URI(f.getUri())));
+      } catch (URISyntaxException | IllegalArgumentException e) {
+        MessageParams msg = new MessageParams();
+        msg.setType(MessageType.Error);
+        msg.setMessage("Workspace root URI invalid: " + f.getUri());
+
+        client.logMessage(msg);
+
+        ServerLauncher.logErr(msg.getMessage());
+      }
+    }
+
+    workspaceRoots = roots;
+    new WorkspaceIndexer(adapters).index(roots);
+  }
+
+  private static boolean supportsWatchedFilesRegistration(final InitializeParams params) {
+    var capabilities = params.getCapabilities();
+    if (capabilities == null || capabilities.getWorkspace() == null
+        || capabilities.getWorkspace().getDidChangeWatchedFiles() == null) {
+      return false;
+    }
+    return Boolean.TRUE.equals(
+        capabilities.getWorkspace().getDidChangeWatchedFiles().getDynamicRegistration());
+  }
+
+  @Override
+  public void initialized(final InitializedParams params) {
+    if (clientWatchesFiles && !SERVER_FILE_WATCHER) {
+      registerFileWatchers();
+    } else if (!workspaceRoots.isEmpty()) {
+      startWorkspaceWatcher();
+    }
+  }
+
+  /** Ask the client to report changes to the files of all languages. */
+  private void registerFileWatchers() {
+    List<FileSystemWatcher> watchers = new ArrayList<>(adapters.length);
+    for (LanguageAdapter adapter : adapters) {
+      watchers.add(new FileSystemWatcher("**/*" + adapter.getFileEnding()));
+    }
+
+    Registration registration = new Registration("som-watched-files",
+        "workspace/didChangeWatchedFiles",
+        new DidChangeWatchedFilesRegistrationOptions(watchers));
+    client.registerCapability(new RegistrationParams(List.of(registration)));
+  }
+
+  /** Watch the workspace ourselves, because the client cannot. */
+  private void startWorkspaceWatcher() {
+    try {
+      watcher = new WorkspaceWatcher(workspaceRoots, this::isLanguageFile,
+          documentService::didChangeWatchedFiles);
+      watcher.start();
+    } catch (IOException e) {
+      ServerLauncher.logErr("[SOM LS] Cannot watch the workspace: " + e.getMessage());
+    }
+  }
+
+  private boolean isLanguageFile(final String fileName) {
     for (LanguageAdapter adapter : adapters) {
-      for (WorkspaceFolder f : folders) {
-        try {
-          adapter.loadWorkspace(f.getUri());
-        } catch (URISyntaxException e) {
-          MessageParams msg = new MessageParams();
-          msg.setType(MessageType.Error);
-          msg.setMessage("Workspace root URI invalid: " + f.getUri());
-
-          client.logMessage(msg);
-
-          ServerLauncher.logErr(msg.getMessage());
-        }
+      if (adapter.handlesUri(fileName)) {
+        return true;
       }
     }
+    return false;
   }
 
   @Override
   public CompletableFuture<Object> shutdown() {
-    // NOOP for the moment
+    documentService.shutdown();
+    requests.shutdown();
+    if (watcher != null) {
+      watcher.stop();
+    }
     return CompletableFuture.completedFuture(null);
   }
 
@@ -189,8 +279,9 @@ public class LanguageServerImpl implements LanguageServer, LanguageClientAware {
 
   @Override
   public void connect(final LanguageClient client) {
+    DiagnosticsPublisher diagnostics = new DiagnosticsPublisher(client);
     for (LanguageAdapter adapter : adapters) {
-      adapter.connect(client);
+      adapter.connect(client, diagnostics);
     }
     this.documentService.connect(client);
     this.client = client;
@@ -0,0 +1,120 @@
+package som.langserv;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Schedules the parsing of documents after changes on a separate thread.
+ *
+ * A burst of changes to the same document is coalesced into a single parse,
+ * which runs once no further change arrived for a short delay. A parse that was
+ * scheduled but did not start yet is dropped when a newer change arrives.
+ * Requests can use {@link #whenParsed(String)} to wait for the latest parse.
+ */
+public class ParseScheduler {
+  private static final String DELAY_PROP = "som.langserv.parse-delay";
+
+  /** Delay in milliseconds to wait for further changes before parsing. */
+  private static final long DELAY = Long.getLong(DELAY_PROP, 75);
+
+  private static final class PendingParse {
+    private final CompletableFuture<Void> parsed;
+
+    private ScheduledFuture<?> task;
+    private boolean            started;
+    private boolean            superseded;
+
+    PendingParse(final CompletableFuture<Void> parsed) {
+      this.parsed = parsed;
+    }
+  }
+
+  private final ScheduledExecutorService executor;
+
+  private final ConcurrentHashMap<String, PendingParse> pending;
+
+  public ParseScheduler() {
+    this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "SOM LS Parser");
+      t.setDaemon(true);
+      return t;
+    });
+    this.pending = new ConcurrentHashMap<>();
+  }
+
+  /** Parse the document as soon as possible, for instance when it is opened. */
+  public CompletableFuture<Void> scheduleNow(final String uri, final Runnable parse) {
+    return schedule(uri, parse, 0);
+  }
+
+  /** Parse the document once no further change arrived for a short delay. */
+  public CompletableFuture<Void> schedule(final String uri, final Runnable parse) {
+    return schedule(uri, parse, DELAY);
+  }
+
+  private CompletableFuture<Void> schedule(final String uri, final Runnable parse,
+      final long delay) {
+    PendingParse p = pending.compute(uri, (k, previous) -> {
+      if (previous != null) {
+        synchronized (previous) {
+          if (!previous.started) {
+            // superseded before it started, so drop it,
+            // but keep the future to inform everyone waiting for it
+            previous.superseded = true;
+            if (previous.task != null) {
+              previous.task.cancel(false);
+            }
+            return new PendingParse(previous.parsed);
+          }
+        }
+      }
+      return new PendingParse(new CompletableFuture<>());
+    });
+
+    synchronized (p) {
+      p.task = executor.schedule(() -> run(uri, p, parse), delay, TimeUnit.MILLISECONDS);
+    }
+    return p.parsed;
+  }
+
+  private void run(final String uri, final PendingParse p, final Runnable parse) {
+    synchronized (p) {
+      if (p.superseded) {
+        // a newer parse got scheduled in the meantime
+        return;
+      }
+      p.started = true;
+    }
+
+    try {
+      parse.run();
+    } catch (Throwable e) {
+      ServerLauncher.logErr("[SOM LS] Parsing " + uri + " failed: " + e.getMessage());
+      e.printStackTrace(ServerLauncher.errWriter());
+    } finally {
+      pending.remove(uri, p);
+      p.parsed.complete(null);
+    }
+  }
+
+  /**
+   * @return a future that completes after the latest scheduled parse of the
+   *         document finished
+   */
+  public CompletableFuture<Void> whenParsed(final String uri) {
+    PendingParse p = pending.get(uri);
+    if (p == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return p.parsed;
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,83 @@
+package som.langserv;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+import org.eclipse.lsp4j.jsonrpc.CompletableFutures;
+import org.eclipse.lsp4j.jsonrpc.CompletableFutures.FutureCancelChecker;
+
+
+/**
+ * Runs requests on a pool of worker threads, so that slow requests do not
+ * block the thread reading messages from the client.
+ *
+ * Requests get a {@link CancelChecker}, which throws once the client sent
+ * {@code $/cancelRequest}, or once the request was superseded by a newer one
+ * of the same kind, see {@link #supersede}. Requests that are cancelled before
+ * they started are not run at all.
+ */
+public class RequestExecutor {
+  private static final String THREADS_PROP = "som.langserv.request-threads";
+
+  /** Number of threads used to answer requests. */
+  private static final int THREADS = Integer.getInteger(THREADS_PROP,
+      Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+  private final ExecutorService pool;
+
+  /** The latest request of each kind that supersedes earlier ones. */
+  private final ConcurrentHashMap<String, CompletableFuture<?>> latest;
+
+  public RequestExecutor() {
+    AtomicInteger threadId = new AtomicInteger();
+    this.pool = Executors.newFixedThreadPool(THREADS, r -> {
+      Thread t = new Thread(r, "SOM LS Request " + threadId.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    this.latest = new ConcurrentHashMap<>();
+  }
+
+  public <T> CompletableFuture<T> compute(final Function<CancelChecker, T> request) {
+    return CompletableFutures.computeAsync(pool, request);
+  }
+
+  /** Like {@link #compute}, but the request starts only after the given future completed. */
+  public <T> CompletableFuture<T> computeAfter(final CompletableFuture<?> before,
+      final Function<CancelChecker, T> request) {
+    if (before.isDone()) {
+      return compute(request);
+    }
+
+    CompletableFuture<CancelChecker> start = new CompletableFuture<>();
+    CompletableFuture<T> result = start.thenCombineAsync(before,
+        (cancelChecker, ignored) -> request.apply(cancelChecker), pool);
+    start.complete(new FutureCancelChecker(result));
+    return result;
+  }
+
+  /**
+   * Cancel the previous request with the same key, if it is still running.
+   * This is used for requests that are repeated while the user types, where
+   * only the latest result is of interest.
+   */
+  public <T> CompletableFuture<T> supersede(final String key,
+      final CompletableFuture<T> request) {
+    CompletableFuture<?> previous = latest.put(key, request);
+    if (previous != null) {
+      previous.cancel(false);
+    }
+
+    request.whenComplete((r, e) -> latest.remove(key, request));
+    return request;
+  }
+
+  public void shutdown() {
+    pool.shutdownNow();
+  }
+}
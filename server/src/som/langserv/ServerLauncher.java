@@ -2,16 +2,24 @@ package som.langserv;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Locale;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.validation.ReflectiveMessageValidator;
 import org.eclipse.lsp4j.launch.LSPLauncher;
 import org.eclipse.lsp4j.services.LanguageClient;
 
+import com.google.gson.GsonBuilder;
+
+import util.PackedIntList;
+
 
 public class ServerLauncher {
 
@@ -60,6 +68,40 @@ public class ServerLauncher {
     return err;
   }
 
+  private static Launcher<LanguageClient> createLauncher(final LanguageServerImpl server,
+      final InputStream in, final OutputStream out) {
+    return new LSPLauncher.Builder<LanguageClient>().setLocalService(server)
+                                                    .setRemoteInterface(LanguageClient.class)
+                                                    .setInput(in).setOutput(out)
+                                                    .configureGson(ServerLauncher::configureGson)
+                                                    .validateMessages(getValidationMode())
+                                                    .create();
+  }
+
+  /**
+   * Messages are validated with {@code -Dsom.langserv.validate-messages=off|sampled|full},
+   * by default only when debugging.
+   */
+  private static ReflectiveMessageValidator.Mode getValidationMode() {
+    String mode = System.getProperty("som.langserv.validate-messages");
+    if (mode == null) {
+      return DEBUG ? ReflectiveMessageValidator.Mode.FULL
+          : ReflectiveMessageValidator.Mode.OFF;
+    }
+
+    try {
+      return ReflectiveMessageValidator.Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      logErr("[SOM LS] Unknown som.langserv.validate-messages mode: " + mode);
+      return ReflectiveMessageValidator.Mode.OFF;
+    }
+  }
+
+  static void configureGson(final GsonBuilder builder) {
+    // is used instead of the generic collection adapter, and writes the ints unboxed
+    builder.registerTypeAdapter(PackedIntList.class, new PackedIntList.GsonAdapter());
+  }
+
   public static void main(final String[] args) {
     LanguageServerImpl tls = new LanguageServerImpl();
 
@@ -69,8 +111,8 @@ public class ServerLauncher {
         while (acceptConnections) {
           try {
             Socket client = serverSocket.accept();
-            Launcher<LanguageClient> launcher = LSPLauncher.createServerLauncher(tls,
-                client.getInputStream(), client.getOutputStream());
+            Launcher<LanguageClient> launcher =
+                createLauncher(tls, client.getInputStream(), client.getOutputStream());
             tls.connect(launcher.getRemoteProxy());
             launcher.startListening();
           } catch (IOException e) {
@@ -84,8 +126,7 @@ public class ServerLauncher {
       }
     } else {
       msg.println("[SOM LS] Server started using stdin/stdout");
-      Launcher<LanguageClient> launcher =
-          LSPLauncher.createServerLauncher(tls, System.in, System.out);
+      Launcher<LanguageClient> launcher = createLauncher(tls, System.in, System.out);
       tls.connect(launcher.getRemoteProxy());
       Future<?> future = launcher.startListening();
 
@@ -0,0 +1,105 @@
+package som.langserv;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+
+import util.PieceTable;
+
+
+/**
+ * Keeps the text of all open documents, so that the client can send incremental
+ * changes instead of the full text on every edit.
+ */
+public class TextDocuments {
+
+  private static final class TextDocument {
+    private final PieceTable text;
+    private int              version;
+
+    TextDocument(final String text, final int version) {
+      this.text = new PieceTable(text);
+      this.version = version;
+    }
+  }
+
+  private final ConcurrentHashMap<String, TextDocument> documents;
+
+  public TextDocuments() {
+    this.documents = new ConcurrentHashMap<>();
+  }
+
+  public void open(final String uri, final String text, final int version) {
+    documents.put(uri, new TextDocument(text, version));
+  }
+
+  public void close(final String uri) {
+    documents.remove(uri);
+  }
+
+  public boolean isOpen(final String uri) {
+    return documents.containsKey(uri);
+  }
+
+  /**
+   * Apply the changes in order. The text is only materialized when it is
+   * requested with {@link #getText(String)}.
+   *
+   * @return false if the document is not open and the changes are not a
+   *         full-text update
+   */
+  public boolean change(final String uri, final int version,
+      final List<? extends TextDocumentContentChangeEvent> changes) {
+    TextDocument doc = documents.get(uri);
+
+    if (doc == null) {
+      // without a previous state, we can only handle a full-text update
+      TextDocumentContentChangeEvent last = changes.get(changes.size() - 1);
+      if (last.getRange() != null) {
+        return false;
+      }
+      open(uri, last.getText(), version);
+      return true;
+    }
+
+    synchronized (doc) {
+      for (TextDocumentContentChangeEvent e : changes) {
+        Range r = e.getRange();
+        if (r == null) {
+          doc.text.reset(e.getText());
+        } else {
+          doc.text.replace(r.getStart().getLine(), r.getStart().getCharacter(),
+              r.getEnd().getLine(), r.getEnd().getCharacter(), e.getText());
+        }
+      }
+      doc.version = version;
+      return true;
+    }
+  }
+
+  /** @return the current text of an open document, or {@code null} */
+  public String getText(final String uri) {
+    TextDocument doc = documents.get(uri);
+    if (doc == null) {
+      return null;
+    }
+
+    synchronized (doc) {
+      return doc.text.snapshot();
+    }
+  }
+
+  /** @return the version of an open document, or {@code -1} */
+  public int getVersion(final String uri) {
+    TextDocument doc = documents.get(uri);
+    if (doc == null) {
+      return -1;
+    }
+
+    synchronized (doc) {
+      return doc.version;
+    }
+  }
+}
@@ -17,21 +17,37 @@ import som.langserv.newspeak.NewspeakAdapter;
 
 public class WorkspaceImpl implements WorkspaceService {
 
+  /** Maximum number of results for a workspace symbol query. */
+  private static final int MAX_SYMBOLS =
+      Integer.getInteger("som.langserv.max-workspace-symbols", 500);
+
   private final LanguageAdapter adapters[];
 
-  public WorkspaceImpl(final LanguageAdapter languageAdapters[]) {
+  private final RequestExecutor requests;
+
+  private final DocumentServiceImpl documentService;
+
+  public WorkspaceImpl(final LanguageAdapter languageAdapters[],
+      final RequestExecutor requests, final DocumentServiceImpl documentService) {
     this.adapters = languageAdapters;
+    this.requests = requests;
+    this.documentService = documentService;
   }
 
   @Override
   public CompletableFuture<List<? extends SymbolInformation>> symbol(
       final WorkspaceSymbolParams params) {
-    ArrayList<SymbolInformation> result = new ArrayList<>();
+    // the query is refined while the user types, so, only the latest matters
+    return requests.supersede("workspace/symbol", requests.compute(cancelChecker -> {
+      ArrayList<SymbolInformation> result = new ArrayList<>();
 
-    for (LanguageAdapter adapter : adapters) {
-      adapter.workspaceSymbol(result, params.getQuery());
-    }
-    return CompletableFuture.completedFuture(result);
+      for (LanguageAdapter adapter : adapters) {
+        cancelChecker.checkCanceled();
+        adapter.workspaceSymbol(result, params.getQuery(), MAX_SYMBOLS - result.size(),
+            cancelChecker);
+      }
+      return result;
+    }));
   }
 
   @Override
@@ -41,7 +57,7 @@ public class WorkspaceImpl implements WorkspaceService {
 
   @Override
   public void didChangeWatchedFiles(final DidChangeWatchedFilesParams params) {
-    // TODO Auto-generated method stub
+    documentService.didChangeWatchedFiles(params.getChanges());
   }
 
   @Override
@@ -0,0 +1,130 @@
+package som.langserv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Loads all files of the workspace folders when the server starts.
+ *
+ * The folders are traversed only once, and each file is handed to the adapter
+ * for its file ending. The files are then parsed on a bounded pool of threads.
+ * Adapters that do not support parallel parsing parse their files one after
+ * another, see {@link LanguageAdapter#indexWorkspace}.
+ */
+public class WorkspaceIndexer {
+  private static final String THREADS_PROP = "som.langserv.index-threads";
+
+  /** Number of threads used to parse the workspace files. */
+  private static final int THREADS =
+      Integer.getInteger(THREADS_PROP, Runtime.getRuntime().availableProcessors());
+
+  private final LanguageAdapter[] adapters;
+
+  public WorkspaceIndexer(final LanguageAdapter[] adapters) {
+    this.adapters = adapters;
+  }
+
+  /**
+   * Collect the files in the given folders, grouped by the adapter that
+   * handles them. Hidden folders, for instance {@code .git}, are skipped.
+   */
+  public Map<LanguageAdapter, List<File>> collectFiles(final List<File> folders)
+      throws IOException {
+    Map<LanguageAdapter, List<File>> files = new LinkedHashMap<>();
+    for (LanguageAdapter adapter : adapters) {
+      files.put(adapter, new ArrayList<>());
+    }
+
+    for (File folder : folders) {
+      Files.walkFileTree(folder.toPath(), new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(final Path dir,
+            final BasicFileAttributes attrs) {
+          Path name = dir.getFileName();
+          if (name != null && name.toString().startsWith(".")) {
+            return FileVisitResult.SKIP_SUBTREE;
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+          String name = file.getFileName().toString();
+          for (LanguageAdapter adapter : adapters) {
+            if (adapter.handlesUri(name)) {
+              files.get(adapter).add(file.toFile());
+              break;
+            }
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+          // if a file or folder can't be read, we just move on to the next one
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    return files;
+  }
+
+  /**
+   * Load and lint all files in the given folders. The folders are traversed on
+   * the pool as well, so that the caller is not blocked.
+   *
+   * @return a future that completes when all adapters are done
+   */
+  public CompletableFuture<Void> index(final List<File> folders) {
+    AtomicInteger threadId = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS, r -> {
+      Thread t = new Thread(r, "SOM LS Indexer " + threadId.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+
+    long start = System.currentTimeMillis();
+    AtomicInteger numFiles = new AtomicInteger();
+
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return collectFiles(folders);
+      } catch (IOException e) {
+        ServerLauncher.logErr("[SOM LS] Failed to traverse workspace: " + e.getMessage());
+        return Map.<LanguageAdapter, List<File>> of();
+      }
+    }, pool).thenCompose(files -> {
+      List<CompletableFuture<Void>> indexed = new ArrayList<>(files.size());
+      for (var e : files.entrySet()) {
+        if (e.getValue().isEmpty()) {
+          continue;
+        }
+        numFiles.addAndGet(e.getValue().size());
+        indexed.add(e.getKey().indexWorkspace(e.getValue(), pool).exceptionally(t -> {
+          ServerLauncher.logErr("[SOM LS] Indexing the workspace failed: " + t.getMessage());
+          t.printStackTrace(ServerLauncher.errWriter());
+          return null;
+        }));
+      }
+      return CompletableFuture.allOf(indexed.toArray(new CompletableFuture<?>[0]));
+    }).whenComplete((r, t) -> {
+      pool.shutdown();
+      ServerLauncher.logErr("[SOM LS] Indexed " + numFiles.get() + " files in "
+          + (System.currentTimeMillis() - start) + "ms");
+    });
+  }
+}
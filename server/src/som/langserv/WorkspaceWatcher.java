@@ -0,0 +1,179 @@
+package som.langserv;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.eclipse.lsp4j.FileChangeType;
+import org.eclipse.lsp4j.FileEvent;
+
+
+/**
+ * Watches the workspace folders for changes on disk, for clients that cannot
+ * watch files for the server.
+ *
+ * The changes are reported as the client would report them with
+ * {@code workspace/didChangeWatchedFiles}, one batch for all events that are
+ * available at once. Like in the {@link WorkspaceIndexer}, hidden folders are
+ * skipped. Deletions are reported for folders, too, because the files in a
+ * deleted folder are not reported individually.
+ */
+public class WorkspaceWatcher {
+
+  private final WatchService watchService;
+
+  /** The watched folders. */
+  private final Map<WatchKey, Path> folders;
+
+  /** Decides by the file name whether changes to a file are reported. */
+  private final Predicate<String> isWatchedFile;
+
+  private final Consumer<List<FileEvent>> listener;
+
+  private final Thread thread;
+
+  public WorkspaceWatcher(final List<File> roots, final Predicate<String> isWatchedFile,
+      final Consumer<List<FileEvent>> listener) throws IOException {
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.folders = new ConcurrentHashMap<>();
+    this.isWatchedFile = isWatchedFile;
+    this.listener = listener;
+
+    for (File root : roots) {
+      register(root.toPath(), null);
+    }
+
+    this.thread = new Thread(this::run, "SOM LS Watcher");
+    this.thread.setDaemon(true);
+  }
+
+  public void start() {
+    thread.start();
+  }
+
+  public void stop() {
+    thread.interrupt();
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      // nothing to be done, we are shutting down
+    }
+  }
+
+  /**
+   * Watch the folder and its subfolders.
+   *
+   * @param created if not {@code null}, receives events for the files that
+   *          already exist, because the folder was just created
+   */
+  private void register(final Path folder, final List<FileEvent> created)
+      throws IOException {
+    Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(final Path dir,
+          final BasicFileAttributes attrs) throws IOException {
+        if (isHidden(dir)) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        folders.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY),
+            dir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+        if (created != null && isWatchedFile.test(file.getFileName().toString())) {
+          created.add(new FileEvent(file.toUri().toString(), FileChangeType.Created));
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private static boolean isHidden(final Path path) {
+    Path name = path.getFileName();
+    return name != null && name.toString().startsWith(".");
+  }
+
+  private void run() {
+    try {
+      while (true) {
+        List<FileEvent> events = new ArrayList<>();
+        WatchKey key = watchService.take();
+        while (key != null) {
+          collect(key, events);
+          key = watchService.poll();
+        }
+
+        if (!events.isEmpty()) {
+          listener.accept(events);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // stopped
+    }
+  }
+
+  private void collect(final WatchKey key, final List<FileEvent> events) {
+    Path folder = folders.get(key);
+    if (folder == null) {
+      key.cancel();
+      return;
+    }
+
+    for (WatchEvent<?> e : key.pollEvents()) {
+      if (e.kind() == OVERFLOW) {
+        ServerLauncher.logErr("[SOM LS] Missed changes to files in " + folder);
+        continue;
+      }
+
+      Path path = folder.resolve((Path) e.context());
+      if (isHidden(path)) {
+        continue;
+      }
+
+      if (e.kind() == ENTRY_DELETE) {
+        events.add(new FileEvent(path.toUri().toString(), FileChangeType.Deleted));
+      } else if (e.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+        try {
+          register(path, events);
+        } catch (IOException ex) {
+          ServerLauncher.logErr("[SOM LS] Cannot watch " + path + ": " + ex.getMessage());
+        }
+      } else if (isWatchedFile.test(path.getFileName().toString())) {
+        FileChangeType type =
+            e.kind() == ENTRY_CREATE ? FileChangeType.Created : FileChangeType.Changed;
+        events.add(new FileEvent(path.toUri().toString(), type));
+      }
+    }
+
+    if (!key.reset()) {
+      folders.remove(key);
+    }
+  }
+}
@@ -4,9 +4,9 @@ import java.io.File;
 
 import org.eclipse.lsp4j.Diagnostic;
 import org.eclipse.lsp4j.DiagnosticSeverity;
-import org.eclipse.lsp4j.DocumentSymbol;
 
 import som.langserv.structure.DocumentStructures;
+import som.langserv.structure.LanguageElement;
 
 
 public class LintRootSymbolMatchesFileName implements FileLinter {
@@ -26,7 +26,7 @@ public class LintRootSymbolMatchesFileName implements FileLinter {
       return;
     }
 
-    DocumentSymbol root = roots.get(0);
+    LanguageElement root = roots.get(0);
     if (!root.getName().equals(moduleName)) {
       structures.addDiagnostic(new Diagnostic(
           root.getSelectionRange(),
@@ -1,7 +1,13 @@
 package som.langserv.lint;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.lsp4j.Diagnostic;
@@ -9,43 +15,211 @@ import org.eclipse.lsp4j.DiagnosticSeverity;
 
 import som.langserv.structure.DocumentStructures;
 import som.langserv.structure.LanguageElementId;
+import som.langserv.structure.Reference;
 
 
+/**
+ * Warns about references to elements that are not defined anywhere in the
+ * workspace.
+ *
+ * The linter is incremental. It counts for each id the documents defining it,
+ * and remembers the documents referencing it. When a document changes, only
+ * the ids that gain their first or lose their last definition need to be
+ * rechecked, and only in the documents referencing them.
+ */
 public class LintUseNeedsDefine implements WorkspaceLinter {
 
+  private static final class DocumentState {
+    private final DocumentStructures     doc;
+    private final Set<LanguageElementId> defined;
+    private final Set<LanguageElementId> referenced;
+
+    /** The warnings added to the document, by the undefined id. */
+    private final Map<LanguageElementId, List<Diagnostic>> warnings;
+
+    DocumentState(final DocumentStructures doc) {
+      this.doc = doc;
+
+      var defs = doc.getAllDefinitions();
+      this.defined = defs == null ? Set.of() : new HashSet<>(defs.keySet());
+
+      var refs = doc.getAllReferences();
+      this.referenced = refs == null ? Set.of() : new HashSet<>(refs.keySet());
+
+      this.warnings = new HashMap<>();
+    }
+  }
+
+  /** The number of documents defining an id. */
+  private final Map<LanguageElementId, Integer> definitionCounts;
+
+  /** The normalized uris of the documents referencing an id. */
+  private final Map<LanguageElementId, Set<String>> referencedBy;
+
+  /** The normalized uri of a document to its state. */
+  private final Map<String, DocumentState> documents;
+
+  public LintUseNeedsDefine() {
+    this.definitionCounts = new HashMap<>();
+    this.referencedBy = new HashMap<>();
+    this.documents = new HashMap<>();
+  }
+
   @Override
-  public void lint(final Collection<DocumentStructures> structures) {
-    // collect everything that's defined
-    Set<LanguageElementId> allDefinedElements = new HashSet<>();
-    for (var s : structures) {
-      var defs = s.getAllDefinitions();
-      if (defs == null) {
+  public synchronized Collection<DocumentStructures> lint(
+      final Collection<DocumentStructures> structures) {
+    // first update the definitions of all given documents,
+    // and find the ids that are newly defined or not defined anymore
+    Set<LanguageElementId> changed = new HashSet<>();
+    Set<String> updated = new HashSet<>();
+    for (DocumentStructures s : structures) {
+      String key = s.getNormalizedUri();
+      DocumentState current = documents.get(key);
+      if (current != null && current.doc == s) {
+        // already linted, and kept up to date since
         continue;
       }
-      allDefinedElements.addAll(defs.keySet());
+
+      updated.add(key);
+      removeDocument(key, changed);
+      addDocument(key, new DocumentState(s), changed);
+    }
+
+    // the updated documents are checked completely
+    for (String key : updated) {
+      DocumentState state = documents.get(key);
+      for (LanguageElementId id : state.referenced) {
+        check(state, id);
+      }
     }
 
-    // now check everything that's referenced,
-    // and report anything for which we do not have a definition
-    for (var s : structures) {
-      var allRefs = s.getAllReferences();
-      if (allRefs == null) {
+    // the others only for the ids of which the definedness changed
+    Set<DocumentStructures> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (LanguageElementId id : changed) {
+      Set<String> referencing = referencedBy.get(id);
+      if (referencing == null) {
         continue;
       }
 
-      for (var ref : allRefs.entrySet()) {
-        LanguageElementId id = ref.getKey();
-        if (!allDefinedElements.contains(id)) {
-          for (var r : ref.getValue()) {
-            Diagnostic diag = new Diagnostic();
-            diag.setRange(r.getRange());
-            diag.setMessage("`" + id.getName()
-                + "` does not seem to be defined, which might cause run-time errors.");
-            diag.setSeverity(DiagnosticSeverity.Warning);
-            s.addDiagnostic(diag);
+      for (String key : referencing) {
+        if (!updated.contains(key)) {
+          DocumentState state = documents.get(key);
+          if (check(state, id)) {
+            affected.add(state.doc);
           }
         }
       }
     }
+    return affected;
+  }
+
+  @Override
+  public synchronized Collection<DocumentStructures> remove(final String normalizedUri) {
+    Set<LanguageElementId> changed = new HashSet<>();
+    removeDocument(normalizedUri, changed);
+
+    Set<DocumentStructures> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (LanguageElementId id : changed) {
+      Set<String> referencing = referencedBy.get(id);
+      if (referencing == null) {
+        continue;
+      }
+
+      for (String key : referencing) {
+        DocumentState state = documents.get(key);
+        if (check(state, id)) {
+          affected.add(state.doc);
+        }
+      }
+    }
+    return affected;
+  }
+
+  private void removeDocument(final String key, final Set<LanguageElementId> changed) {
+    DocumentState old = documents.remove(key);
+    if (old == null) {
+      return;
+    }
+
+    for (LanguageElementId id : old.defined) {
+      int count = definitionCounts.merge(id, -1, Integer::sum);
+      if (count == 0) {
+        definitionCounts.remove(id);
+        toggle(changed, id);
+      }
+    }
+
+    for (LanguageElementId id : old.referenced) {
+      Set<String> referencing = referencedBy.get(id);
+      referencing.remove(key);
+      if (referencing.isEmpty()) {
+        referencedBy.remove(id);
+      }
+    }
+
+    // the warnings are not removed from the old structures, they were replaced
+  }
+
+  private void addDocument(final String key, final DocumentState state,
+      final Set<LanguageElementId> changed) {
+    documents.put(key, state);
+
+    for (LanguageElementId id : state.defined) {
+      int count = definitionCounts.merge(id, 1, Integer::sum);
+      if (count == 1) {
+        toggle(changed, id);
+      }
+    }
+
+    for (LanguageElementId id : state.referenced) {
+      referencedBy.computeIfAbsent(id, k -> new HashSet<>(2)).add(key);
+    }
+  }
+
+  /**
+   * An id that lost its last definition and gained a new one, or the other way
+   * around, did not change.
+   */
+  private static void toggle(final Set<LanguageElementId> changed,
+      final LanguageElementId id) {
+    if (!changed.remove(id)) {
+      changed.add(id);
+    }
+  }
+
+  /**
+   * Add or remove the warnings for the references to the id.
+   *
+   * @return true if the diagnostics of the document changed
+   */
+  private boolean check(final DocumentState state, final LanguageElementId id) {
+    boolean isDefined = definitionCounts.containsKey(id);
+
+    if (isDefined) {
+      List<Diagnostic> warnings = state.warnings.remove(id);
+      if (warnings == null) {
+        return false;
+      }
+      state.doc.removeDiagnostics(warnings);
+      return true;
+    }
+
+    if (state.warnings.containsKey(id)) {
+      return false;
+    }
+
+    List<Reference> refs = state.doc.getAllReferences().get(id);
+    List<Diagnostic> warnings = new ArrayList<>(refs.size());
+    for (var r : refs) {
+      Diagnostic diag = new Diagnostic();
+      diag.setRange(r.getRange());
+      diag.setMessage("`" + id.getName()
+          + "` does not seem to be defined, which might cause run-time errors.");
+      diag.setSeverity(DiagnosticSeverity.Warning);
+      state.doc.addDiagnostic(diag);
+      warnings.add(diag);
+    }
+    state.warnings.put(id, warnings);
+    return true;
   }
 }
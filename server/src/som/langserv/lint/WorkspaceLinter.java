@@ -1,10 +1,28 @@
 package som.langserv.lint;
 
 import java.util.Collection;
+import java.util.List;
 
 import som.langserv.structure.DocumentStructures;
 
 
 public interface WorkspaceLinter {
-  void lint(Collection<DocumentStructures> structures);
+
+  /**
+   * Lint the given documents, which replace any earlier version of them.
+   * Linters may keep state between calls, so that only the given documents
+   * and the documents depending on them need to be checked.
+   *
+   * @return the other documents of which the diagnostics changed
+   */
+  Collection<DocumentStructures> lint(Collection<DocumentStructures> structures);
+
+  /**
+   * Forget a document that was removed from the workspace.
+   *
+   * @return the documents of which the diagnostics changed
+   */
+  default Collection<DocumentStructures> remove(final String normalizedUri) {
+    return List.of();
+  }
 }
@@ -1,5 +1,6 @@
 package som.langserv.newspeak;
 
+import static som.vm.Symbols.symbolFor;
 import static util.PositionConversion.toRange;
 import static util.PositionConversion.toRangeMax;
 
@@ -28,6 +29,7 @@ import som.compiler.SourcecodeCompiler;
 import som.compiler.Variable;
 import som.interpreter.SomLanguage;
 import som.interpreter.objectstorage.StorageAccessor;
+import som.langserv.IndexCache;
 import som.langserv.LanguageAdapter;
 import som.langserv.lens.FileLens;
 import som.langserv.lens.Minitest;
@@ -37,6 +39,7 @@ import som.langserv.lint.LintFileHasNSEnding;
 import som.langserv.lint.LintUseNeedsDefine;
 import som.langserv.lint.WorkspaceLinter;
 import som.langserv.structure.DocumentStructures;
+import som.langserv.structure.LanguageElementId;
 import som.vm.Primitives;
 import som.vmobjects.SInvokable;
 import som.vmobjects.SSymbol;
@@ -111,6 +114,28 @@ public class NewspeakAdapter extends LanguageAdapter {
     return SomLanguage.getCurrent().getVM();
   }
 
+  @Override
+  protected String getIndexCacheKey() {
+    return super.getIndexCacheKey() + ";" + IndexCache.versionOf(SomLanguage.class) + ";"
+        + CORE_LIB_PATH;
+  }
+
+  @Override
+  protected String encodeId(final LanguageElementId id) {
+    if (id instanceof SymbolId) {
+      return "s" + id.getName();
+    }
+    return null;
+  }
+
+  @Override
+  protected LanguageElementId decodeId(final String key) {
+    if (key.charAt(0) == 's') {
+      return SymbolId.idFor(symbolFor(key.substring(1)));
+    }
+    return super.decodeId(key);
+  }
+
   @Override
   public DocumentStructures parse(final String text, final String sourceUri)
       throws URISyntaxException {
@@ -81,7 +81,7 @@ public class NewspeakParser extends Parser {
     recordTokenSemantics(coord, name, SemanticTokenType.CLASS);
 
     LanguageElement clazz =
-        startSymbol(name, SymbolKind.Class, coord, new SymbolId(symbolFor(name)));
+        startSymbol(name, SymbolKind.Class, coord, SymbolId.idFor(symbolFor(name)));
     currentClass.push(clazz);
     clazz.setDetail(name);
 
@@ -150,7 +150,7 @@ public class NewspeakParser extends Parser {
     } finally {
       currentClass.pop();
 
-      clazz.setId(new SymbolId(symbolFor("class")));
+      clazz.setId(SymbolId.idFor(symbolFor("class")));
       clazz.setDetail(mxnBuilder.getName() + " class");
 
       symbols.completeSymbol(clazz, toRange(getSource(coord)));
@@ -214,7 +214,7 @@ public class NewspeakParser extends Parser {
 
     SSymbol msg = symbolFor(kw.toString());
 
-    SymbolId call = new SymbolId(msg);
+    SymbolId call = SymbolId.idFor(msg);
 
     for (int i = 0; i < numParts; i += 1) {
       referenceSymbol(call, starts[i], msg.getString().length());
@@ -235,7 +235,7 @@ public class NewspeakParser extends Parser {
     int coord = getStartIndex();
     SSymbol result = super.unarySendSelector();
     recordTokenSemantics(coord, result.getString(), SemanticTokenType.METHOD);
-    referenceSymbol(new SymbolId(result), coord, result.getString().length());
+    referenceSymbol(SymbolId.idFor(result), coord, result.getString().length());
     return result;
   }
 
@@ -270,7 +270,7 @@ public class NewspeakParser extends Parser {
       referenceSymbol(new VariableId(local), section);
     } else {
       recordTokenSemantics(section, SemanticTokenType.METHOD);
-      referenceSymbol(new SymbolId(selector), section);
+      referenceSymbol(SymbolId.idFor(selector), section);
     }
     return result;
   }
@@ -289,7 +289,7 @@ public class NewspeakParser extends Parser {
     SSymbol result = super.binarySendSelector();
 
     recordTokenSemantics(coord, result.getString(), SemanticTokenType.METHOD);
-    referenceSymbol(new SymbolId(result), coord, result.getString().length());
+    referenceSymbol(SymbolId.idFor(result), coord, result.getString().length());
     return result;
   }
 
@@ -322,7 +322,7 @@ public class NewspeakParser extends Parser {
     super.unaryPattern(builder);
 
     currentMethod.setName(builder.getSignature().getString());
-    currentMethod.setId(new SymbolId(builder.getSignature()));
+    currentMethod.setId(SymbolId.idFor(builder.getSignature()));
     currentMethod.setSelectionRange(getRange(coord, builder.getSignature().getString()));
 
     currentMethod.setDetail(builder.getSignature().getString());
@@ -339,7 +339,7 @@ public class NewspeakParser extends Parser {
 
     String name = builder.getSignature().getString();
     currentMethod.setName(name);
-    currentMethod.setId(new SymbolId(builder.getSignature()));
+    currentMethod.setId(SymbolId.idFor(builder.getSignature()));
     currentMethod.setSelectionRange(getRange(coord, name));
 
     currentMethod.setDetail(name + " " + builder.getArgument(1).name.getString());
@@ -360,7 +360,7 @@ public class NewspeakParser extends Parser {
 
     String name = builder.getSignature().getString();
     currentMethod.setName(name);
-    currentMethod.setId(new SymbolId(builder.getSignature()));
+    currentMethod.setId(SymbolId.idFor(builder.getSignature()));
 
     Position start = getStart(source, keywordStart.get(0));
     Position end = getEnd(source, keywordStart.get(keywordStart.size() - 1),
@@ -426,7 +426,7 @@ public class NewspeakParser extends Parser {
     recordTokenSemantics(slot.getSourceSection(), SemanticTokenType.PROPERTY);
     int inOuterScope = currentMethod == null ? 0 : 1;
     LanguageElement elem = recordSymbolDefinition(slot.getName().getString(),
-        new SymbolId(slot.getName()), SymbolKind.Property, slot.getSourceSection(), true,
+        SymbolId.idFor(slot.getName()), SymbolKind.Property, slot.getSourceSection(), true,
         inOuterScope);
     elem.setDetail(slot.getName().getString());
 
@@ -434,7 +434,7 @@ public class NewspeakParser extends Parser {
       SSymbol setterName = MixinBuilder.getSetterName(slot.getName());
 
       elem = recordSymbolDefinition(setterName.getString(),
-          new SymbolId(setterName), SymbolKind.Property, slot.getSourceSection(), true,
+          SymbolId.idFor(setterName), SymbolKind.Property, slot.getSourceSection(), true,
           inOuterScope);
       elem.setDetail(slot.getName().getString());
     }
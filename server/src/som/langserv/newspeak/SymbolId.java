@@ -1,14 +1,26 @@
 package som.langserv.newspeak;
 
+import som.langserv.structure.IdInterner;
 import som.langserv.structure.LanguageElementId;
 import som.vmobjects.SSymbol;
 
 
 public class SymbolId extends LanguageElementId {
+  /** Equal ids are shared across the workspace, while they are in use. */
+  private static final IdInterner<SSymbol, SymbolId> INTERNED =
+      new IdInterner<>(SymbolId::new);
+
   private final SSymbol sym;
+  private final int     hash;
 
   public SymbolId(final SSymbol sym) {
     this.sym = sym;
+    this.hash = sym.hashCode();
+  }
+
+  /** @return the shared id for the symbol */
+  public static SymbolId idFor(final SSymbol sym) {
+    return INTERNED.intern(sym);
   }
 
   @Override
@@ -18,7 +30,7 @@ public class SymbolId extends LanguageElementId {
 
   @Override
   public int hashCode() {
-    return sym.hashCode();
+    return hash;
   }
 
   @Override
@@ -2,20 +2,32 @@ package som.langserv.simple;
 
 import java.util.Objects;
 
+import som.langserv.structure.IdInterner;
 import som.langserv.structure.LanguageElementId;
 
 
 public class PropertyId extends LanguageElementId {
 
+  /** Properties are not scoped, so all equal ids are shared across the workspace. */
+  private static final IdInterner<String, PropertyId> INTERNED =
+      new IdInterner<>(PropertyId::new);
+
   private final String name;
+  private final int    hash;
 
   public PropertyId(final String name) {
     this.name = name;
+    this.hash = Objects.hashCode(name);
+  }
+
+  /** @return the shared id for the property name */
+  public static PropertyId idFor(final String name) {
+    return INTERNED.intern(name);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(name);
+    return hash;
   }
 
   @Override
@@ -30,7 +42,7 @@ public class PropertyId extends LanguageElementId {
       return false;
     }
     PropertyId other = (PropertyId) obj;
-    return Objects.equals(name, other.name);
+    return hash == other.hash && Objects.equals(name, other.name);
   }
 
   @Override
@@ -17,6 +17,7 @@ import som.langserv.lint.LintEndsWithNewline;
 import som.langserv.lint.LintUseNeedsDefine;
 import som.langserv.lint.WorkspaceLinter;
 import som.langserv.structure.DocumentStructures;
+import som.langserv.structure.LanguageElementId;
 
 
 public class SimpleAdapter extends LanguageAdapter {
@@ -32,6 +33,35 @@ public class SimpleAdapter extends LanguageAdapter {
     return ".sl";
   }
 
+  @Override
+  public boolean supportsParallelParsing() {
+    // each parse uses its own lexer and parser
+    return true;
+  }
+
+  @Override
+  protected String encodeId(final LanguageElementId id) {
+    if (id instanceof VarId v && v.isGlobal()) {
+      return "v" + v.getName();
+    } else if (id instanceof PropertyId) {
+      return "p" + id.getName();
+    }
+    return null;
+  }
+
+  @Override
+  protected LanguageElementId decodeId(final String key) {
+    String name = key.substring(1);
+    switch (key.charAt(0)) {
+      case 'v':
+        return VarId.idFor(name, null);
+      case 'p':
+        return PropertyId.idFor(name);
+      default:
+        return super.decodeId(key);
+    }
+  }
+
   @Override
   public DocumentStructures parse(final String text, final String sourceUri)
       throws URISyntaxException {
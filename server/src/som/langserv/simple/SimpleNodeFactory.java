@@ -56,7 +56,7 @@ public class SimpleNodeFactory extends SLNodeFactory {
     addSemanticToken(identifier, SemanticTokenType.FUNCTION);
 
     currentFunction = structures.startSymbol(identifier.getText(), SymbolKind.Function,
-        new VarId(identifier.getText(), null), getRange(identifier), true);
+        VarId.idFor(identifier.getText(), null), getRange(identifier), true);
 
     paramNames = new ArrayList<>(3);
   }
@@ -112,7 +112,7 @@ public class SimpleNodeFactory extends SLNodeFactory {
   @Override
   public void addFormalParameter(final Token identifier) {
     addSemanticToken(identifier, SemanticTokenType.PARAMETER);
-    recordDefinition(identifier, new VarId(identifier.getText(), currentFunction),
+    recordDefinition(identifier, VarId.idFor(identifier.getText(), currentFunction),
         SymbolKind.Variable);
     paramNames.add(identifier.getText());
   }
@@ -174,7 +174,7 @@ public class SimpleNodeFactory extends SLNodeFactory {
       addSemanticToken(
           t.identifier,
           SemanticTokenType.VARIABLE);
-      referenceSymbol(new VarId(t.identifier.getText(),
+      referenceSymbol(VarId.idFor(t.identifier.getText(),
           getCurrentFunIfItHasDefinition(t.identifier.getText())), t.identifier);
     } else {
       throw new RuntimeException("Not yet implemented " + assignmentName.getClass());
@@ -186,7 +186,7 @@ public class SimpleNodeFactory extends SLNodeFactory {
   public SLExpressionNode createAssignment(final SLExpressionNode assignmentName,
       final SLExpressionNode result) {
     if (assignmentName instanceof SimpleString s) {
-      recordDefinition(s.identifier, new VarId(s.identifier.getText(), currentFunction),
+      recordDefinition(s.identifier, VarId.idFor(s.identifier.getText(), currentFunction),
           SymbolKind.Variable);
     } else {
       throw new RuntimeException("Not yet implemented " + assignmentName.getClass());
@@ -199,7 +199,7 @@ public class SimpleNodeFactory extends SLNodeFactory {
       final List<SLExpressionNode> parameters, final Token e) {
     Token name = receiver.getLastName();
     addSemanticToken(name, SemanticTokenType.FUNCTION);
-    referenceSymbol(new VarId(name.getText(), currentFunction), name);
+    referenceSymbol(VarId.idFor(name.getText(), currentFunction), name);
 
     return super.createCall(receiver, parameters, e);
   }
@@ -208,12 +208,12 @@ public class SimpleNodeFactory extends SLNodeFactory {
   public SLExpressionNode createReadProperty(final SLExpressionNode receiver,
       final SLExpressionNode nestedAssignmentName) {
     if (nestedAssignmentName instanceof SimpleString s) {
-      referenceSymbol(new PropertyId(s.identifier.getText()), s.identifier).markAsRead();
+      referenceSymbol(PropertyId.idFor(s.identifier.getText()), s.identifier).markAsRead();
     } else if (nestedAssignmentName instanceof SLRead r) {
       SLExpressionNode name = r.assignmentName;
       if (name instanceof SimpleString s) {
         referenceSymbol(
-            new VarId(s.identifier.getText(),
+            VarId.idFor(s.identifier.getText(),
                 getCurrentFunIfItHasDefinition(s.identifier.getText())),
             s.identifier).markAsRead();
       } else {
@@ -231,7 +231,7 @@ public class SimpleNodeFactory extends SLNodeFactory {
       final SLExpressionNode result) {
     if (!assignmentName.isRead()) {
       Token name = assignmentName.getLastName();
-      LanguageElement e = recordDefinition(name, new PropertyId(name.getText()),
+      LanguageElement e = recordDefinition(name, PropertyId.idFor(name.getText()),
           SymbolKind.Property, true, false);
       e.setDetail(name.getText());
     }
@@ -2,23 +2,41 @@ package som.langserv.simple;
 
 import java.util.Objects;
 
+import som.langserv.structure.IdInterner;
 import som.langserv.structure.LanguageElement;
 import som.langserv.structure.LanguageElementId;
 
 
 public class VarId extends LanguageElementId {
 
+  /** Ids of functions, which are shared across the workspace while in use. */
+  private static final IdInterner<String, VarId> GLOBALS =
+      new IdInterner<>(n -> new VarId(n, null));
+
   private final String          name;
   private final LanguageElement containingFn;
+  private final int             hash;
 
   public VarId(final String name, final LanguageElement fn) {
     this.name = name;
     this.containingFn = fn;
+    this.hash = Objects.hash(name, fn);
+  }
+
+  /**
+   * @return the shared id for a function, or a new id for a variable of the
+   *         given function
+   */
+  public static VarId idFor(final String name, final LanguageElement fn) {
+    if (fn == null) {
+      return GLOBALS.intern(name);
+    }
+    return new VarId(name, fn);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(name, containingFn);
+    return hash;
   }
 
   @Override
@@ -33,12 +51,17 @@ public class VarId extends LanguageElementId {
       return false;
     }
     VarId other = (VarId) obj;
-    if (!name.equals(other.name)) {
+    if (hash != other.hash || !name.equals(other.name)) {
       return false;
     }
     return containingFn == other.containingFn;
   }
 
+  /** @return true for functions, which are not contained in another function */
+  public boolean isGlobal() {
+    return containingFn == null;
+  }
+
   @Override
   public String getName() {
     return name;
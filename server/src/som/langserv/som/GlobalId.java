@@ -2,15 +2,27 @@ package som.langserv.som;
 
 import java.util.Objects;
 
+import som.langserv.structure.IdInterner;
 import som.langserv.structure.LanguageElementId;
 import trufflesom.vmobjects.SSymbol;
 
 
 public class GlobalId extends LanguageElementId {
+  /** Equal ids are shared across the workspace, while they are in use. */
+  private static final IdInterner<SSymbol, GlobalId> INTERNED =
+      new IdInterner<>(GlobalId::new);
+
   private final SSymbol name;
+  private final int     hash;
 
   public GlobalId(final SSymbol name) {
     this.name = name;
+    this.hash = Objects.hashCode(name);
+  }
+
+  /** @return the shared id for the symbol */
+  public static GlobalId idFor(final SSymbol name) {
+    return INTERNED.intern(name);
   }
 
   @Override
@@ -20,7 +32,7 @@ public class GlobalId extends LanguageElementId {
 
   @Override
   public int hashCode() {
-    return Objects.hash(name);
+    return hash;
   }
 
   @Override
@@ -1,16 +1,15 @@
 package som.langserv.som;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 
@@ -24,6 +23,7 @@ import com.oracle.truffle.api.source.Source;
 import bdt.basic.ProgramDefinitionError;
 import bdt.source.SourceCoordinate;
 import bdt.tools.structure.StructuralProbe;
+import som.langserv.IndexCache;
 import som.langserv.LanguageAdapter;
 import som.langserv.lint.FileLinter;
 import som.langserv.lint.LintEndsWithNewline;
@@ -31,6 +31,7 @@ import som.langserv.lint.LintFileHasNSEnding;
 import som.langserv.lint.LintUseNeedsDefine;
 import som.langserv.lint.WorkspaceLinter;
 import som.langserv.structure.DocumentStructures;
+import som.langserv.structure.LanguageElementId;
 import trufflesom.compiler.Field;
 import trufflesom.compiler.Parser;
 import trufflesom.compiler.Parser.ParseError;
@@ -39,6 +40,7 @@ import trufflesom.compiler.Variable;
 import trufflesom.interpreter.SomLanguage;
 import trufflesom.vm.Classes;
 import trufflesom.vm.Globals;
+import trufflesom.vm.SymbolTable;
 import trufflesom.vm.Universe;
 import trufflesom.vmobjects.SClass;
 import trufflesom.vmobjects.SInvokable;
@@ -151,34 +153,52 @@ public class SomAdapter extends LanguageAdapter {
   }
 
   @Override
-  public ForkJoinTask<?> loadWorkspace(final String uri) throws URISyntaxException {
-    if (uri == null) {
-      return null;
-    }
+  public CompletableFuture<Void> indexWorkspace(final List<File> files,
+      final Executor indexingPool) {
+    // the compiler and the Truffle context are only used from our own thread
+    return CompletableFuture.runAsync(() -> {
+      context.enter();
+      try {
+        indexSequentially(files);
+      } finally {
+        context.leave();
+      }
+    }, pool);
+  }
 
-    URI workspaceUri = new URI(uri);
-    File workspace = new File(workspaceUri);
-    assert workspace.isDirectory();
+  @Override
+  protected DocumentStructures parseFile(final String text, final String uri)
+      throws URISyntaxException {
+    return parseSync(text, uri);
+  }
 
-    return pool.submit(() -> loadWorkspaceAndLint(workspace));
+  @Override
+  protected String getIndexCacheKey() {
+    return super.getIndexCacheKey() + ";" + IndexCache.versionOf(SomLanguage.class) + ";"
+        + CORE_LIB_PATH;
   }
 
   @Override
-  protected void loadWorkspaceAndLint(final File workspace) {
-    context.enter();
-    try {
-      super.loadWorkspaceAndLint(workspace);
-    } finally {
-      context.leave();
+  protected String encodeId(final LanguageElementId id) {
+    if (id instanceof GlobalId) {
+      return "g" + id.getName();
+    } else if (id instanceof SymbolId) {
+      return "s" + id.getName();
     }
+    return null;
   }
 
   @Override
-  public DocumentStructures loadFile(final File f) throws IOException, URISyntaxException {
-    byte[] content = Files.readAllBytes(f.toPath());
-    String str = new String(content, StandardCharsets.UTF_8);
-    String uri = f.toURI().toString();
-    return parseSync(str, uri);
+  protected LanguageElementId decodeId(final String key) {
+    SSymbol name = SymbolTable.symbolFor(key.substring(1));
+    switch (key.charAt(0)) {
+      case 'g':
+        return GlobalId.idFor(name);
+      case 's':
+        return SymbolId.idFor(name);
+      default:
+        return super.decodeId(key);
+    }
   }
 
   @Override
@@ -83,7 +83,7 @@ public class SomParser extends ParserAst {
     super.className(cgenc, coord);
     String name = cgenc.getName().getString();
     recordTokenSemantics(coord, name, SemanticTokenType.CLASS);
-    currentClass = startSymbol(name, SymbolKind.Class, coord, new GlobalId(cgenc.getName()));
+    currentClass = startSymbol(name, SymbolKind.Class, coord, GlobalId.idFor(cgenc.getName()));
     currentClass.setDetail(name);
   }
 
@@ -105,7 +105,7 @@ public class SomParser extends ParserAst {
 
       LanguageElement clazz = currentClass;
       currentClass = startSymbol("class", SymbolKind.Class, coord,
-          new GlobalId(SymbolTable.symbolFor(cgenc.getName().getString() + " class")));
+          GlobalId.idFor(SymbolTable.symbolFor(cgenc.getName().getString() + " class")));
 
       super.classSide(cgenc);
 
@@ -208,7 +208,7 @@ public class SomParser extends ParserAst {
         recordTokenSemantics(sourceSection, SemanticTokenType.VARIABLE);
       } else {
         recordTokenSemantics(sourceSection, SemanticTokenType.CLASS);
-        referenceSymbol(new GlobalId(variableName), sourceSection);
+        referenceSymbol(GlobalId.idFor(variableName), sourceSection);
       }
     }
     return result;
@@ -228,7 +228,7 @@ public class SomParser extends ParserAst {
     SSymbol result = super.unarySendSelector();
 
     recordTokenSemantics(coord, result.getString(), SemanticTokenType.METHOD);
-    referenceSymbol(new SymbolId(result), coord, result.getString().length());
+    referenceSymbol(SymbolId.idFor(result), coord, result.getString().length());
     return result;
   }
 
@@ -246,7 +246,7 @@ public class SomParser extends ParserAst {
     SSymbol result = super.binarySendSelector();
 
     recordTokenSemantics(coord, result.getString(), SemanticTokenType.METHOD);
-    referenceSymbol(new SymbolId(result), coord, result.getString().length());
+    referenceSymbol(SymbolId.idFor(result), coord, result.getString().length());
     return result;
   }
 
@@ -274,7 +274,7 @@ public class SomParser extends ParserAst {
 
     SSymbol msg = symbolFor(kw.toString());
 
-    SymbolId call = new SymbolId(msg);
+    SymbolId call = SymbolId.idFor(msg);
 
     for (int i = 0; i < numParts; i += 1) {
       referenceSymbol(call, starts[i], msg.getString().length());
@@ -350,7 +350,7 @@ public class SomParser extends ParserAst {
 
     SSymbol result = super.literalSymbol();
     recordTokenSemantics(coord, result.getString() + 1, SemanticTokenType.STRING);
-    recordSymbolDefinition(result.getString(), new SymbolId(result), SymbolKind.Constant,
+    recordSymbolDefinition(result.getString(), SymbolId.idFor(result), SymbolKind.Constant,
         coord);
 
     return result;
@@ -422,7 +422,7 @@ public class SomParser extends ParserAst {
     super.unaryPattern(mgenc);
 
     currentMethod.setName(mgenc.getSignature().getString());
-    currentMethod.setId(new SymbolId(mgenc.getSignature()));
+    currentMethod.setId(SymbolId.idFor(mgenc.getSignature()));
     currentMethod.setSelectionRange(getRange(coord, mgenc.getSignature().getString()));
 
     currentMethod.setDetail(mgenc.getSignature().getString());
@@ -438,7 +438,7 @@ public class SomParser extends ParserAst {
 
     String name = mgenc.getSignature().getString();
     currentMethod.setName(name);
-    currentMethod.setId(new SymbolId(mgenc.getSignature()));
+    currentMethod.setId(SymbolId.idFor(mgenc.getSignature()));
     currentMethod.setSelectionRange(getRange(coord, name));
 
     currentMethod.setDetail(name + " " + mgenc.getArgument(1).getName().getString());
@@ -457,7 +457,7 @@ public class SomParser extends ParserAst {
 
     String name = mgenc.getSignature().getString();
     currentMethod.setName(name);
-    currentMethod.setId(new SymbolId(mgenc.getSignature()));
+    currentMethod.setId(SymbolId.idFor(mgenc.getSignature()));
 
     Position start = getStart(source, keywordStart.get(0));
     Position end = getEnd(source, keywordStart.get(keywordStart.size() - 1),
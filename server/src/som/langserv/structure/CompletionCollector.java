@@ -0,0 +1,145 @@
+package som.langserv.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.eclipse.lsp4j.CompletionItem;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+
+
+/**
+ * Selects the best completion candidates for a query.
+ *
+ * Only the best {@code limit} candidates are kept in a heap, and completion
+ * items are created only for them. Candidates with the same score keep the
+ * order in which they were offered, so that elements in scope come first.
+ */
+public final class CompletionCollector {
+
+  private static final class Candidate {
+    private final LanguageElement element;
+    private final int             score;
+    private final long            order;
+
+    Candidate(final LanguageElement element, final int score, final long order) {
+      this.element = element;
+      this.score = score;
+      this.order = order;
+    }
+  }
+
+  private static final Comparator<Candidate> RANK = (a, b) -> {
+    int diff = Integer.compare(b.score, a.score);
+    if (diff != 0) {
+      return diff;
+    }
+    return Long.compare(a.order, b.order);
+  };
+
+  private final String        query;
+  private final int           limit;
+  private final CancelChecker cancelChecker;
+
+  /** The worst of the best candidates is at the head. */
+  private final PriorityQueue<Candidate> best;
+
+  private long numOffered;
+  private long numMatches;
+
+  public CompletionCollector(final String query, final int limit) {
+    this(query, limit, null);
+  }
+
+  /**
+   * @param cancelChecker if not {@code null}, checked regularly while
+   *          candidates are offered
+   */
+  public CompletionCollector(final String query, final int limit,
+      final CancelChecker cancelChecker) {
+    this.query = query;
+    this.limit = limit;
+    this.cancelChecker = cancelChecker;
+    this.best = new PriorityQueue<>(Math.min(Math.max(limit, 1), 64), RANK.reversed());
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  public void offer(final LanguageElement element) {
+    numOffered += 1;
+    if (cancelChecker != null && (numOffered & 0xFF) == 0) {
+      cancelChecker.checkCanceled();
+    }
+
+    int score = element.getId().matchScore(query);
+    if (score == FuzzyMatcher.NO_MATCH) {
+      return;
+    }
+
+    long order = numMatches;
+    numMatches += 1;
+
+    if (best.size() < limit) {
+      best.add(new Candidate(element, score, order));
+    } else if (limit > 0 && score > best.peek().score) {
+      best.poll();
+      best.add(new Candidate(element, score, order));
+    }
+  }
+
+  /**
+   * @return true if there were more matches than the limit, and the client
+   *         needs to ask again as the query gets longer
+   */
+  public boolean isIncomplete() {
+    return numMatches > limit;
+  }
+
+  /**
+   * @return the completion items of the best candidates, in order, without
+   *         duplicates
+   */
+  public List<CompletionItem> createItems() {
+    return createItems(true, null);
+  }
+
+  /**
+   * @param withDetails whether to include the details, otherwise they are
+   *          added on request with {@link LanguageElement#resolveCompletionItem}
+   * @param elements if not {@code null}, receives the element of each item
+   * @return the completion items of the best candidates, in order, without
+   *         duplicates
+   */
+  public List<CompletionItem> createItems(final boolean withDetails,
+      final List<LanguageElement> elements) {
+    Candidate[] sorted = best.toArray(new Candidate[0]);
+    Arrays.sort(sorted, RANK);
+
+    List<CompletionItem> items = new ArrayList<>(sorted.length);
+    Set<List<Object>> seen = new HashSet<>();
+    for (Candidate c : sorted) {
+      LanguageElement e = c.element;
+      if (!seen.add(Arrays.asList(e.getName(), e.getKind(), e.getDetail()))) {
+        continue;
+      }
+
+      CompletionItem item = withDetails
+          ? e.createCompletionItem(query)
+          : e.createLazyCompletionItem();
+
+      // keep the ranking, clients otherwise sort by label
+      item.setSortText(String.format("%06d", items.size()));
+      items.add(item);
+      if (elements != null) {
+        elements.add(e);
+      }
+    }
+    return items;
+  }
+}
@@ -0,0 +1,131 @@
+package som.langserv.structure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.lsp4j.SymbolKind;
+
+
+/**
+ * Indexes the elements of all documents that can be completed from other
+ * documents, by their lowercased name.
+ *
+ * In primary position, these are the top-level elements and their members,
+ * but not the locals of methods and functions. After a navigation, these are
+ * the elements a document records for navigation.
+ *
+ * Since {@link FuzzyMatcher} requires the first character of the query to
+ * match, a query only visits the names starting with that character.
+ */
+public final class CompletionIndex extends DocumentIndex<List<CompletionIndex.Entry>> {
+
+  static final class Entry {
+    private final String          lowerName;
+    private final LanguageElement element;
+    private final String          normalizedPath;
+    private final boolean         afterNavigation;
+
+    Entry(final String lowerName, final LanguageElement element,
+        final String normalizedPath, final boolean afterNavigation) {
+      this.lowerName = lowerName;
+      this.element = element;
+      this.normalizedPath = normalizedPath;
+      this.afterNavigation = afterNavigation;
+    }
+  }
+
+  private final TreeMap<String, List<Entry>> primary;
+  private final TreeMap<String, List<Entry>> navigation;
+
+  public CompletionIndex() {
+    this.primary = new TreeMap<>();
+    this.navigation = new TreeMap<>();
+  }
+
+  @Override
+  protected List<Entry> addEntries(final String normalizedPath,
+      final DocumentStructures doc, final List<Entry> previous) {
+    List<Entry> entries = new ArrayList<>();
+    addVisible(doc.getRootSymbols(), normalizedPath, entries);
+
+    List<LanguageElement> afterNav = doc.getAfterNavigationSymbols();
+    if (afterNav != null) {
+      for (LanguageElement e : afterNav) {
+        add(e, normalizedPath, true, entries);
+      }
+    }
+    return entries;
+  }
+
+  private void addVisible(final List<LanguageElement> elements,
+      final String normalizedPath, final List<Entry> entries) {
+    if (elements == null) {
+      return;
+    }
+
+    for (LanguageElement e : elements) {
+      add(e, normalizedPath, false, entries);
+      if (!isBody(e.getKind())) {
+        addVisible(e.getAllChildren(), normalizedPath, entries);
+      }
+    }
+  }
+
+  private static boolean isBody(final SymbolKind kind) {
+    return kind == SymbolKind.Method || kind == SymbolKind.Function
+        || kind == SymbolKind.Constructor;
+  }
+
+  private void add(final LanguageElement e, final String normalizedPath,
+      final boolean afterNavigation, final List<Entry> entries) {
+    String lowerName = e.getId().getName().toLowerCase(Locale.ROOT);
+    Entry entry = new Entry(lowerName, e, normalizedPath, afterNavigation);
+    entries.add(entry);
+    getNames(afterNavigation).computeIfAbsent(lowerName, k -> new ArrayList<>(1)).add(entry);
+  }
+
+  private TreeMap<String, List<Entry>> getNames(final boolean afterNavigation) {
+    return afterNavigation ? navigation : primary;
+  }
+
+  @Override
+  protected void removeEntries(final String normalizedPath, final List<Entry> entries) {
+    for (Entry e : entries) {
+      TreeMap<String, List<Entry>> names = getNames(e.afterNavigation);
+      List<Entry> withName = names.get(e.lowerName);
+      withName.remove(e);
+      if (withName.isEmpty()) {
+        names.remove(e.lowerName);
+      }
+    }
+  }
+
+  /**
+   * Offer the candidates of all documents except the given one to the
+   * collector.
+   */
+  public synchronized void collect(final ParseContextKind context,
+      final String excludedPath, final CompletionCollector collector) {
+    TreeMap<String, List<Entry>> names = getNames(context == ParseContextKind.Navigation);
+
+    String query = collector.getQuery();
+    Map<String, List<Entry>> candidates;
+    if (query == null || query.isEmpty()) {
+      candidates = names;
+    } else {
+      String first = query.substring(0, 1).toLowerCase(Locale.ROOT);
+      candidates = names.subMap(first, true, first + Character.MAX_VALUE, true);
+    }
+
+    for (List<Entry> withName : candidates.values()) {
+      for (Entry e : withName) {
+        if (!e.normalizedPath.equals(excludedPath)) {
+          collector.offer(e.element);
+        }
+      }
+    }
+  }
+}
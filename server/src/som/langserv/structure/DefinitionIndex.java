@@ -0,0 +1,114 @@
+package som.langserv.structure;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.lsp4j.LocationLink;
+import org.eclipse.lsp4j.Range;
+
+
+/**
+ * Indexes the definitions of all documents by their id, so that going to a
+ * definition is a single lookup, independent of the size of the workspace.
+ *
+ * Updates replace the definitions of a document, and are serialized. Lookups
+ * do not lock, the definitions of an id are replaced as a whole.
+ */
+public final class DefinitionIndex extends DocumentIndex<Set<LanguageElementId>> {
+
+  private static final class Definition {
+    private final String          normalizedPath;
+    private final String          uri;
+    private final LanguageElement element;
+
+    Definition(final String normalizedPath, final String uri,
+        final LanguageElement element) {
+      this.normalizedPath = normalizedPath;
+      this.uri = uri;
+      this.element = element;
+    }
+  }
+
+  private static final Definition[] NONE = new Definition[0];
+
+  private final ConcurrentHashMap<LanguageElementId, Definition[]> byId;
+
+  public DefinitionIndex() {
+    this.byId = new ConcurrentHashMap<>();
+  }
+
+  /** @return the ids defined by the document */
+  @Override
+  protected Set<LanguageElementId> addEntries(final String normalizedPath,
+      final DocumentStructures doc, final Set<LanguageElementId> previous) {
+    Map<LanguageElementId, Set<LanguageElement>> defs = doc.getAllDefinitions();
+    if (defs == null) {
+      return null;
+    }
+
+    String uri = doc.getUri();
+    for (var e : defs.entrySet()) {
+      Definition[] added = new Definition[e.getValue().size()];
+      int i = 0;
+      for (LanguageElement element : e.getValue()) {
+        added[i] = new Definition(normalizedPath, uri, element);
+        i += 1;
+      }
+      byId.merge(e.getKey(), added, DefinitionIndex::concat);
+    }
+    return Set.copyOf(defs.keySet());
+  }
+
+  @Override
+  protected void removeEntries(final String normalizedPath,
+      final Set<LanguageElementId> ids) {
+    for (LanguageElementId id : ids) {
+      byId.computeIfPresent(id, (k, defs) -> {
+        Definition[] remaining = without(defs, normalizedPath);
+        return remaining.length == 0 ? null : remaining;
+      });
+    }
+  }
+
+  /**
+   * Add links to the definitions of the element. Definitions in the document
+   * with the given path come first.
+   */
+  public void lookup(final Pair<LanguageElementId, Range> element,
+      final String normalizedPath, final List<LocationLink> results) {
+    Definition[] defs = byId.getOrDefault(element.v1, NONE);
+
+    for (Definition d : defs) {
+      if (d.normalizedPath.equals(normalizedPath)) {
+        results.add(d.element.createLocationLink(d.uri, element.v2));
+      }
+    }
+
+    for (Definition d : defs) {
+      if (!d.normalizedPath.equals(normalizedPath)) {
+        results.add(d.element.createLocationLink(d.uri, element.v2));
+      }
+    }
+  }
+
+  private static Definition[] concat(final Definition[] a, final Definition[] b) {
+    Definition[] result = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return result;
+  }
+
+  private static Definition[] without(final Definition[] defs, final String normalizedPath) {
+    int n = 0;
+    Definition[] result = new Definition[defs.length];
+    for (Definition d : defs) {
+      if (!d.normalizedPath.equals(normalizedPath)) {
+        result[n] = d;
+        n += 1;
+      }
+    }
+    return n == defs.length ? defs : Arrays.copyOf(result, n);
+  }
+}
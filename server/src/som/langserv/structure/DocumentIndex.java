@@ -0,0 +1,67 @@
+package som.langserv.structure;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Base class of the indexes over the structures of all documents.
+ *
+ * An index remembers the entries it added for each document, so that they
+ * can be replaced or removed without visiting the other documents. Updates
+ * are serialized by the index. Subclasses only add and remove the entries of
+ * a single document, and synchronize on the index for lookups that need a
+ * consistent view.
+ *
+ * @param <E> the entries added for a document
+ */
+public abstract class DocumentIndex<E> {
+
+  /** Normalized path of a document to its entries. */
+  private final Map<String, E> byDocument;
+
+  protected DocumentIndex() {
+    this.byDocument = new HashMap<>();
+  }
+
+  /** Replace the entries of the document with the given path. */
+  public final synchronized void update(final String normalizedPath,
+      final DocumentStructures doc) {
+    E previous = byDocument.remove(normalizedPath);
+    if (previous != null) {
+      removeEntries(normalizedPath, previous);
+    }
+
+    E entries = addEntries(normalizedPath, doc, previous);
+    if (entries != null) {
+      byDocument.put(normalizedPath, entries);
+    }
+  }
+
+  /** Remove the entries of the document with the given path. */
+  public final synchronized void remove(final String normalizedPath) {
+    E entries = byDocument.remove(normalizedPath);
+    if (entries != null) {
+      removeEntries(normalizedPath, entries);
+    }
+  }
+
+  /** @return the entries of the document, or {@code null} if there are none */
+  protected final E getEntries(final String normalizedPath) {
+    assert Thread.holdsLock(this);
+    return byDocument.get(normalizedPath);
+  }
+
+  /**
+   * Add the entries for the document.
+   *
+   * @param previous the entries the document had before, which were removed
+   *          already, or {@code null}
+   * @return the added entries, or {@code null} if nothing was added
+   */
+  protected abstract E addEntries(String normalizedPath, DocumentStructures doc,
+      E previous);
+
+  /** Remove entries that were added by {@link #addEntries}. */
+  protected abstract void removeEntries(String normalizedPath, E entries);
+}
@@ -1,34 +1,46 @@
 package som.langserv.structure;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.eclipse.lsp4j.CompletionItem;
 import org.eclipse.lsp4j.Diagnostic;
 import org.eclipse.lsp4j.DiagnosticSeverity;
 import org.eclipse.lsp4j.DocumentHighlight;
 import org.eclipse.lsp4j.Hover;
 import org.eclipse.lsp4j.Location;
-import org.eclipse.lsp4j.LocationLink;
 import org.eclipse.lsp4j.MarkupContent;
 import org.eclipse.lsp4j.Position;
 import org.eclipse.lsp4j.Range;
 import org.eclipse.lsp4j.SignatureHelp;
 import org.eclipse.lsp4j.SignatureHelpContext;
 import org.eclipse.lsp4j.SignatureInformation;
-import org.eclipse.lsp4j.SymbolInformation;
 import org.eclipse.lsp4j.SymbolKind;
 
 import util.ArrayListIgnoreIfLastIdentical;
 
 
+/**
+ * The structures of a document, recorded while parsing it.
+ *
+ * Once parsed, the structures are frozen and published as a snapshot of a
+ * version of the document. Frozen structures are only read, so that requests
+ * can use them from multiple threads without locking. Only the diagnostics
+ * may still change, because linters add them afterwards. They are replaced as
+ * a whole on every change.
+ */
 public class DocumentStructures {
 
-  private List<Diagnostic> diagnostics;
+  /** Version of structures that do not belong to a version of an open document. */
+  public static final int UNVERSIONED = -1;
+
+  private volatile List<Diagnostic> diagnostics;
 
   private final ArrayList<LanguageElement> symbolsScope;
 
@@ -46,6 +58,12 @@ public class DocumentStructures {
 
   private final SemanticTokens semanticTokens;
 
+  /** Built lazily, and dropped when symbols or references are added. */
+  private volatile PositionIndex positionIndex;
+
+  private volatile boolean frozen;
+  private volatile int     version;
+
   public DocumentStructures(final String remoteUri, final String normalizedUri) {
     this.symbolsScope = new ArrayList<>();
     this.rootSymbols = new ArrayList<>();
@@ -53,6 +71,35 @@ public class DocumentStructures {
     this.remoteUri = remoteUri;
     this.normalizedUri = normalizedUri;
     this.semanticTokens = new SemanticTokens();
+    this.version = UNVERSIONED;
+  }
+
+  /**
+   * Complete the structures before they are published. Afterwards, symbols,
+   * references, and semantic tokens cannot be added anymore.
+   *
+   * @param version of the document that was parsed, or {@link #UNVERSIONED}
+   */
+  public void freeze(final int version) {
+    this.version = version;
+    semanticTokens.freeze();
+    positionIndex = new PositionIndex(rootSymbols);
+    frozen = true;
+  }
+
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /** @return the version of the document these structures were parsed from */
+  public int getVersion() {
+    return version;
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new IllegalStateException("Structures of " + getUri() + " are frozen");
+    }
   }
 
   public Map<LanguageElementId, Set<LanguageElement>> getAllDefinitions() {
@@ -63,6 +110,46 @@ public class DocumentStructures {
     return allReferences;
   }
 
+  List<Reference> getRootReferences() {
+    return rootReference;
+  }
+
+  List<LanguageElement> getAfterNavigationSymbols() {
+    return afterNavigationSymbols;
+  }
+
+  String getRemoteUri() {
+    return remoteUri;
+  }
+
+  public String getNormalizedUri() {
+    return normalizedUri;
+  }
+
+  void restoreDefinition(final LanguageElement symbol) {
+    recordForLookup(symbol);
+  }
+
+  void restoreAfterNavigationSymbol(final LanguageElement symbol) {
+    recordForAfterNavigation(symbol);
+  }
+
+  void restoreRootReference(final Reference ref) {
+    checkNotFrozen();
+    if (rootReference == null) {
+      rootReference = new ArrayList<>();
+    }
+    rootReference.add(ref);
+  }
+
+  void restoreReference(final Reference ref) {
+    checkNotFrozen();
+    if (allReferences == null) {
+      allReferences = new HashMap<>();
+    }
+    allReferences.computeIfAbsent(ref.id, k -> new ArrayList<>(3)).add(ref);
+  }
+
   public SemanticTokens getSemanticTokens() {
     return semanticTokens;
   }
@@ -72,11 +159,12 @@ public class DocumentStructures {
   }
 
   public Diagnostic getFirstErrorOrNull() {
-    if (diagnostics == null) {
+    List<Diagnostic> diags = diagnostics;
+    if (diags == null) {
       return null;
     }
 
-    for (Diagnostic d : diagnostics) {
+    for (Diagnostic d : diags) {
       if (d.getSeverity() == DiagnosticSeverity.Error) {
         return d;
       }
@@ -84,12 +172,31 @@ public class DocumentStructures {
     return null;
   }
 
-  public void addDiagnostic(final Diagnostic diag) {
+  public synchronized void addDiagnostic(final Diagnostic diag) {
+    List<Diagnostic> diags;
     if (diagnostics == null) {
-      diagnostics = new ArrayList<>(1);
+      diags = new ArrayList<>(1);
+    } else {
+      diags = new ArrayList<>(diagnostics.size() + 1);
+      diags.addAll(diagnostics);
     }
 
-    diagnostics.add(diag);
+    diags.add(diag);
+    diagnostics = Collections.unmodifiableList(diags);
+  }
+
+  /** Remove the given diagnostics, comparing them by identity. */
+  public synchronized void removeDiagnostics(final Collection<Diagnostic> diags) {
+    if (diagnostics == null || diags.isEmpty()) {
+      return;
+    }
+
+    Set<Diagnostic> toRemove = Collections.newSetFromMap(new IdentityHashMap<>());
+    toRemove.addAll(diags);
+
+    List<Diagnostic> remaining = new ArrayList<>(diagnostics);
+    remaining.removeIf(toRemove::contains);
+    diagnostics = Collections.unmodifiableList(remaining);
   }
 
   /**
@@ -117,6 +224,8 @@ public class DocumentStructures {
   }
 
   private void addToScopes(final LanguageElement symbol, final int inOuterScope) {
+    checkNotFrozen();
+    positionIndex = null;
     if (symbolsScope.isEmpty()) {
       assert inOuterScope == 0;
       rootSymbols.add(symbol);
@@ -127,7 +236,9 @@ public class DocumentStructures {
   }
 
   public void completeSymbol(final LanguageElement symbol, final Range fullRange) {
+    checkNotFrozen();
     symbol.setRange(fullRange);
+    positionIndex = null;
 
     // we may complete a symbol, as part of a finally handler,
     // i.e., when unwinding the stack with an error
@@ -149,6 +260,7 @@ public class DocumentStructures {
   }
 
   private void recordForLookup(final LanguageElement symbol) {
+    checkNotFrozen();
     if (symbols == null) {
       symbols = new HashMap<>();
     }
@@ -163,6 +275,7 @@ public class DocumentStructures {
   }
 
   private void recordForAfterNavigation(final LanguageElement symbol) {
+    checkNotFrozen();
     if (afterNavigationSymbols == null) {
       afterNavigationSymbols = new ArrayList<>();
     }
@@ -207,7 +320,9 @@ public class DocumentStructures {
    * @param range the code range were the reference is in the file
    */
   public Reference referenceSymbol(final LanguageElementId id, final Range range) {
+    checkNotFrozen();
     Reference ref = new Reference(id, range);
+    positionIndex = null;
     if (!symbolsScope.isEmpty()) {
       LanguageElement current = symbolsScope.get(symbolsScope.size() - 1);
       current.addContained(ref);
@@ -241,7 +356,7 @@ public class DocumentStructures {
   }
 
   public Hover getHover(final Position position) {
-    WithRange symbol = getMostPrecise(position, rootSymbols);
+    WithRange symbol = getMostPrecise(position);
     if (symbol == null) {
       return null;
     }
@@ -288,7 +403,7 @@ public class DocumentStructures {
 
   public SignatureHelp getSignatureHelp(final Position position,
       final SignatureHelpContext context) {
-    WithRange symbol = getMostPrecise(position, rootSymbols);
+    WithRange symbol = getMostPrecise(position);
     if (symbol == null) {
       return null;
     }
@@ -331,7 +446,7 @@ public class DocumentStructures {
   }
 
   public List<DocumentHighlight> getHighlight(final Position position) {
-    WithRange symbol = getMostPrecise(position, rootSymbols);
+    WithRange symbol = getMostPrecise(position);
     if (symbol == null) {
       return null;
     }
@@ -385,44 +500,19 @@ public class DocumentStructures {
     return symbols.get(ref.id);
   }
 
-  private WithRange getMostPrecise(final Position pos,
-      final List<? extends WithRange> es) {
-    if (es == null) {
-      return null;
+  private WithRange getMostPrecise(final Position pos) {
+    PositionIndex index = positionIndex;
+    if (index == null) {
+      // not frozen yet, for instance in tests
+      index = new PositionIndex(rootSymbols);
+      positionIndex = index;
     }
-
-    for (var e : es) {
-      if (isIn(pos, e)) {
-        if (e instanceof LanguageElement le) {
-          List<LanguageElement> children = le.getAllChildren();
-          if (children != null) {
-            var child = getMostPrecise(pos, children);
-            if (child != null) {
-              return child;
-            }
-          }
-
-          var refs = le.getReferences();
-          if (refs != null) {
-            for (var ref : refs) {
-              if (isIn(pos, ref)) {
-                return ref;
-              }
-            }
-          }
-        }
-        return e;
-      }
-    }
-
-    return null;
+    return index.find(pos);
   }
 
-  private static boolean isIn(final Position pos, final WithRange e) {
-    Range r = e.getRange();
-    assert r != null;
-
-    return isIn(pos, r);
+  private static boolean isIn(final long pos, final WithRange e) {
+    assert e.getStart() != PackedRange.NONE;
+    return PackedRange.contains(e.getStart(), e.getEnd(), pos);
   }
 
   private static boolean isIn(final Position pos, final Range range) {
@@ -453,23 +543,8 @@ public class DocumentStructures {
     return true;
   }
 
-  public void find(final List<SymbolInformation> results, final String query) {
-    if (symbols == null) {
-      return;
-    }
-
-    for (var e : symbols.entrySet()) {
-      if (e.getKey().matches(query)) {
-        for (var s : e.getValue()) {
-          String uri = getUri();
-          results.add(s.createSymbolInfo(uri));
-        }
-      }
-    }
-  }
-
-  private void findIn(final String partialName, final Position pos,
-      final List<LanguageElement> es, final List<CompletionItem> results) {
+  private void findIn(final long pos, final List<LanguageElement> es,
+      final CompletionCollector results) {
     if (es == null) {
       return;
     }
@@ -477,24 +552,24 @@ public class DocumentStructures {
     for (var e : es) {
       if (isIn(pos, e)) {
         List<LanguageElement> children = e.getAllChildren();
-        findIn(partialName, pos, children, results);
+        findIn(pos, children, results);
       }
 
-      if (e.matches(partialName)) {
-        results.add(e.createCompletionItem(partialName));
-      }
+      results.offer(e);
     }
   }
 
-  public void find(final String partialName, final ParseContextKind context,
-      final Position position, final List<CompletionItem> results) {
+  /**
+   * Offer the elements of this document that can be completed at the
+   * position to the collector.
+   */
+  public void find(final ParseContextKind context, final Position position,
+      final CompletionCollector results) {
     if (context == ParseContextKind.Primary) {
-      findIn(partialName, position, rootSymbols, results);
+      findIn(PackedRange.pack(position), rootSymbols, results);
     } else if (context == ParseContextKind.Navigation && afterNavigationSymbols != null) {
       for (var e : afterNavigationSymbols) {
-        if (e.matches(partialName)) {
-          results.add(e.createCompletionItem(partialName));
-        }
+        results.offer(e);
       }
     }
   }
@@ -504,7 +579,7 @@ public class DocumentStructures {
   }
 
   public Pair<LanguageElementId, Range> getElement(final Position pos) {
-    WithRange symbol = getMostPrecise(pos, rootSymbols);
+    WithRange symbol = getMostPrecise(pos);
     if (symbol == null) {
       return null;
     }
@@ -518,23 +593,6 @@ public class DocumentStructures {
     }
   }
 
-  public void lookupDefinitions(final Pair<LanguageElementId, Range> element,
-      final List<LocationLink> definitions) {
-    if (symbols == null) {
-      return;
-    }
-
-    var defs = symbols.get(element.v1);
-
-    if (defs == null) {
-      return;
-    }
-
-    for (var d : defs) {
-      definitions.add(d.createLocationLink(getUri(), element.v2));
-    }
-  }
-
   public void lookupDefinitionsLocation(final Pair<LanguageElementId, Range> element,
       final List<Location> definitions) {
     if (symbols == null) {
@@ -569,16 +627,18 @@ public class DocumentStructures {
   }
 
   public Pair<ParseContextKind, String> getPossiblyIncompleteElement(final Position position) {
-    var e = getMostPrecise(position, rootSymbols);
+    var e = getMostPrecise(position);
     if (e == null) {
       return null;
     }
 
-    if (e instanceof LanguageElement le && !isIn(position, le.getSelectionRange())) {
+    if (e instanceof LanguageElement le
+        && !le.selectionContains(PackedRange.pack(position))) {
       boolean isNavigation = false;
       Range navRange = null;
-      if (diagnostics != null) {
-        for (Diagnostic d : diagnostics) {
+      List<Diagnostic> diags = diagnostics;
+      if (diags != null) {
+        for (Diagnostic d : diags) {
           if (d.getData() == Boolean.TRUE) {
             isNavigation = true;
             navRange = d.getRange();
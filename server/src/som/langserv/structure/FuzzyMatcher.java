@@ -0,0 +1,124 @@
+package som.langserv.structure;
+
+/**
+ * Scores how well a name matches a partially typed query.
+ *
+ * The first character of the query has to match the first character of the
+ * name, ignoring case. The other characters may match the starts of later
+ * words in the name, as in {@code pL} for {@code printLine} or {@code ap} for
+ * {@code at:put:}, or any later characters in order.
+ *
+ * Better matches get higher scores: exact matches, then prefixes, then
+ * matches of word starts, and then other subsequences. Within each group,
+ * shorter names score higher.
+ */
+public final class FuzzyMatcher {
+
+  public static final int NO_MATCH = -1;
+
+  private static final int EXACT              = 6000;
+  private static final int EXACT_IGNORE_CASE  = 5000;
+  private static final int PREFIX             = 4000;
+  private static final int PREFIX_IGNORE_CASE = 3000;
+  private static final int WORD_STARTS        = 2000;
+  private static final int SUBSEQUENCE        = 1000;
+
+  private static final int MAX_PENALTY = 999;
+
+  private FuzzyMatcher() {}
+
+  /** @return the score of the match, or {@link #NO_MATCH} */
+  public static int score(final String name, final String query) {
+    if (query == null || query.isEmpty()) {
+      return 0;
+    }
+
+    int qLength = query.length();
+    int nLength = name.length();
+    if (qLength > nLength || !equalsIgnoreCase(name.charAt(0), query.charAt(0))) {
+      return NO_MATCH;
+    }
+
+    int lengthPenalty = Math.min(nLength, MAX_PENALTY);
+
+    if (name.startsWith(query)) {
+      return (qLength == nLength ? EXACT : PREFIX) - lengthPenalty;
+    }
+
+    if (name.regionMatches(true, 0, query, 0, qLength)) {
+      return (qLength == nLength ? EXACT_IGNORE_CASE : PREFIX_IGNORE_CASE) - lengthPenalty;
+    }
+
+    if (matchesWordStarts(name, query)) {
+      return WORD_STARTS - lengthPenalty;
+    }
+
+    int gaps = subsequenceGaps(name, query);
+    if (gaps < 0) {
+      return NO_MATCH;
+    }
+    return SUBSEQUENCE - Math.min(gaps + nLength, MAX_PENALTY);
+  }
+
+  /**
+   * Match the query so that every character either continues the current
+   * word, or starts a later word of the name.
+   */
+  private static boolean matchesWordStarts(final String name, final String query) {
+    int n = 1;
+    for (int q = 1; q < query.length(); q += 1) {
+      char c = query.charAt(q);
+      if (n < name.length() && equalsIgnoreCase(name.charAt(n), c)) {
+        n += 1;
+        continue;
+      }
+
+      n = nextWordStart(name, n, c);
+      if (n < 0) {
+        return false;
+      }
+      n += 1;
+    }
+    return true;
+  }
+
+  private static int nextWordStart(final String name, final int from, final char c) {
+    for (int i = Math.max(from, 1); i < name.length(); i += 1) {
+      if (isWordStart(name, i) && equalsIgnoreCase(name.charAt(i), c)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isWordStart(final String name, final int i) {
+    char c = name.charAt(i);
+    char prev = name.charAt(i - 1);
+    if (!Character.isLetterOrDigit(prev)) {
+      return Character.isLetterOrDigit(c);
+    }
+    return Character.isUpperCase(c) && !Character.isUpperCase(prev);
+  }
+
+  /** @return the number of skipped characters, or -1 if the query does not match */
+  private static int subsequenceGaps(final String name, final String query) {
+    int gaps = 0;
+    int n = 1;
+    for (int q = 1; q < query.length(); q += 1) {
+      char c = query.charAt(q);
+      while (n < name.length() && !equalsIgnoreCase(name.charAt(n), c)) {
+        n += 1;
+        gaps += 1;
+      }
+      if (n == name.length()) {
+        return -1;
+      }
+      n += 1;
+    }
+    return gaps;
+  }
+
+  private static boolean equalsIgnoreCase(final char a, final char b) {
+    return a == b || Character.toLowerCase(a) == Character.toLowerCase(b);
+  }
+}
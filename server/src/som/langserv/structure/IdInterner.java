@@ -0,0 +1,75 @@
+package som.langserv.structure;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+
+/**
+ * An intern table for ids that are meaningful across documents, so that
+ * equal ids are the same object in all documents and indexes.
+ *
+ * The table references the ids only weakly. Once no document uses an id
+ * anymore, for instance because the documents using it were deleted, the id
+ * is collected, and its entry is removed on one of the next lookups.
+ *
+ * @param <K> the key an id is created from
+ * @param <V> the type of the ids
+ */
+public final class IdInterner<K, V extends LanguageElementId> {
+
+  private static final class Entry<K, V> extends WeakReference<V> {
+    private final K key;
+
+    Entry(final K key, final V id, final ReferenceQueue<? super V> queue) {
+      super(id, queue);
+      this.key = key;
+    }
+  }
+
+  private final ConcurrentHashMap<K, Entry<K, V>> table;
+  private final ReferenceQueue<V>                 collected;
+  private final Function<K, V>                    create;
+
+  public IdInterner(final Function<K, V> create) {
+    this.table = new ConcurrentHashMap<>();
+    this.collected = new ReferenceQueue<>();
+    this.create = create;
+  }
+
+  /** @return the shared id for the key, which is created if needed */
+  public V intern(final K key) {
+    removeCollected();
+
+    while (true) {
+      Entry<K, V> entry = table.get(key);
+      V id = entry == null ? null : entry.get();
+      if (id != null) {
+        return id;
+      }
+
+      V created = create.apply(key);
+      Entry<K, V> added = new Entry<>(key, created, collected);
+      if (entry == null ? table.putIfAbsent(key, added) == null
+          : table.replace(key, entry, added)) {
+        return created;
+      }
+      // another thread interned the id first, use its id
+    }
+  }
+
+  /** @return the number of entries, including collected ids not removed yet */
+  public int size() {
+    return table.size();
+  }
+
+  private void removeCollected() {
+    Reference<? extends V> ref;
+    while ((ref = collected.poll()) != null) {
+      Entry<?, ?> entry = (Entry<?, ?>) ref;
+      table.remove(entry.key, entry);
+    }
+  }
+}
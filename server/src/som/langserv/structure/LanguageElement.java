@@ -2,6 +2,7 @@ package som.langserv.structure;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import org.eclipse.lsp4j.CompletionItem;
 import org.eclipse.lsp4j.CompletionItemKind;
@@ -10,49 +11,122 @@ import org.eclipse.lsp4j.DocumentHighlightKind;
 import org.eclipse.lsp4j.DocumentSymbol;
 import org.eclipse.lsp4j.Location;
 import org.eclipse.lsp4j.LocationLink;
+import org.eclipse.lsp4j.MarkupContent;
+import org.eclipse.lsp4j.MarkupKind;
 import org.eclipse.lsp4j.Range;
 import org.eclipse.lsp4j.SignatureInformation;
 import org.eclipse.lsp4j.SymbolInformation;
 import org.eclipse.lsp4j.SymbolKind;
-import org.eclipse.xtext.xbase.lib.Pure;
 
 
-public final class LanguageElement extends DocumentSymbol implements WithRange {
+/**
+ * An element of a document, for instance a class, method, or variable.
+ *
+ * Elements are kept for all documents of the workspace, so they are compact:
+ * names are interned, and ranges are encoded by {@link PackedRange}. The
+ * {@link DocumentSymbol} and other protocol objects are only created for a
+ * response.
+ */
+public final class LanguageElement implements WithRange {
 
-  private transient LanguageElementId id;
+  private String           name;
+  private final SymbolKind kind;
+  private String           detail;
 
-  private transient List<Reference> containedReferences;
+  private LanguageElementId id;
 
-  protected transient List<LanguageElement> allChildren;
+  /** The full range and the range of the identifier, encoded by {@link PackedRange}. */
+  private long start;
+  private long end;
+  private long selectionStart;
+  private long selectionEnd;
 
-  private transient SignatureInformation signature;
+  private List<Reference> containedReferences;
+
+  private List<LanguageElement> allChildren;
+
+  private SignatureInformation signature;
 
   /**
    * If true, this element will be listed as a symbol on document and workspace symbol
    * requests.
    */
-  private transient final boolean listAsSymbol;
-
-  private transient int stableHash;
+  private final boolean listAsSymbol;
 
   public LanguageElement(final String name, final SymbolKind kind,
       final LanguageElementId id, final Range identifierRange, final boolean listAsSymbol) {
-    super();
+    this(kind, listAsSymbol);
     setName(name);
-    setKind(kind);
     setSelectionRange(identifierRange);
     this.id = id;
+  }
+
+  public LanguageElement(final SymbolKind kind, final boolean listAsSymbol) {
+    this.kind = kind;
     this.listAsSymbol = listAsSymbol;
+    this.start = PackedRange.NONE;
+    this.end = PackedRange.NONE;
+    this.selectionStart = PackedRange.NONE;
+    this.selectionEnd = PackedRange.NONE;
   }
 
   public boolean matches(final String query) {
     return id.matches(query);
   }
 
-  public LanguageElement(final SymbolKind kind, final boolean listAsSymbol) {
-    super();
-    setKind(kind);
-    this.listAsSymbol = listAsSymbol;
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  public void setName(final String name) {
+    this.name = name == null ? null : name.intern();
+  }
+
+  public SymbolKind getKind() {
+    return kind;
+  }
+
+  public String getDetail() {
+    return detail;
+  }
+
+  public void setDetail(final String detail) {
+    this.detail = detail;
+  }
+
+  @Override
+  public Range getRange() {
+    return PackedRange.toRange(start, end);
+  }
+
+  public void setRange(final Range range) {
+    start = PackedRange.start(range);
+    end = PackedRange.end(range);
+  }
+
+  @Override
+  public long getStart() {
+    return start;
+  }
+
+  @Override
+  public long getEnd() {
+    return end;
+  }
+
+  public Range getSelectionRange() {
+    return PackedRange.toRange(selectionStart, selectionEnd);
+  }
+
+  public void setSelectionRange(final Range range) {
+    selectionStart = PackedRange.start(range);
+    selectionEnd = PackedRange.end(range);
+  }
+
+  /** @return true if the identifier of this element contains the encoded position */
+  public boolean selectionContains(final long pos) {
+    return PackedRange.contains(selectionStart, selectionEnd, pos);
   }
 
   @Override
@@ -76,16 +150,6 @@ public final class LanguageElement extends DocumentSymbol implements WithRange {
   }
 
   public void addChild(final LanguageElement symbol) {
-    if (symbol.listAsSymbol) {
-      var children = getChildren();
-
-      if (children == null) {
-        children = new ArrayList<>();
-        setChildren(children);
-      }
-      children.add(symbol);
-    }
-
     if (allChildren == null) {
       allChildren = new ArrayList<>();
     }
@@ -96,6 +160,48 @@ public final class LanguageElement extends DocumentSymbol implements WithRange {
     return allChildren;
   }
 
+  /** @return the children that are listed as symbols, or {@code null} if there are none */
+  public List<LanguageElement> getChildren() {
+    if (allChildren == null) {
+      return null;
+    }
+
+    List<LanguageElement> children = null;
+    for (LanguageElement c : allChildren) {
+      if (c.listAsSymbol) {
+        if (children == null) {
+          children = new ArrayList<>();
+        }
+        children.add(c);
+      }
+    }
+    return children;
+  }
+
+  /** Create the document symbol of this element, with its listed children. */
+  public DocumentSymbol createDocumentSymbol() {
+    DocumentSymbol symbol = new DocumentSymbol();
+    symbol.setName(name);
+    symbol.setKind(kind);
+    symbol.setDetail(detail);
+    symbol.setRange(getRange());
+    symbol.setSelectionRange(getSelectionRange());
+
+    List<LanguageElement> children = getChildren();
+    if (children != null) {
+      List<DocumentSymbol> childSymbols = new ArrayList<>(children.size());
+      for (LanguageElement c : children) {
+        childSymbols.add(c.createDocumentSymbol());
+      }
+      symbol.setChildren(childSymbols);
+    }
+    return symbol;
+  }
+
+  public boolean isListedAsSymbol() {
+    return listAsSymbol;
+  }
+
   public boolean hasId() {
     return id != null;
   }
@@ -152,13 +258,54 @@ public final class LanguageElement extends DocumentSymbol implements WithRange {
   }
 
   public CompletionItem createCompletionItem(final String partialName) {
+    CompletionItem item = createLazyCompletionItem();
+    item.setDetail(getDetail());
+    return item;
+  }
+
+  /**
+   * Create a completion item with only label and kind. The details are added
+   * by {@link #resolveCompletionItem} once the client asks for them.
+   */
+  public CompletionItem createLazyCompletionItem() {
     CompletionItem item = new CompletionItem();
     item.setLabel(getName());
     item.setKind(getCompletionKind(getKind()));
-    item.setDetail(getDetail());
     return item;
   }
 
+  /** Add the detail and the documentation of this element to the item. */
+  public void resolveCompletionItem(final CompletionItem item) {
+    item.setDetail(getDetail());
+
+    if (signature == null) {
+      return;
+    }
+
+    StringBuilder doc = new StringBuilder(signature.getLabel());
+
+    var params = signature.getParameters();
+    if (params != null && !params.isEmpty()) {
+      doc.append("\n\nParameters: ");
+      for (int i = 0; i < params.size(); i += 1) {
+        if (i > 0) {
+          doc.append(", ");
+        }
+        var label = params.get(i).getLabel();
+        doc.append(label.isLeft() ? label.getLeft() : signature.getLabel().substring(
+            label.getRight().getFirst(), label.getRight().getSecond()));
+      }
+    }
+
+    var sigDoc = signature.getDocumentation();
+    if (sigDoc != null) {
+      doc.append("\n\n");
+      doc.append(sigDoc.isLeft() ? sigDoc.getLeft() : sigDoc.getRight().getValue());
+    }
+
+    item.setDocumentation(new MarkupContent(MarkupKind.PLAINTEXT, doc.toString()));
+  }
+
   private static CompletionItemKind getCompletionKind(final SymbolKind kind) {
     switch (kind) {
       case File:
@@ -219,53 +366,37 @@ public final class LanguageElement extends DocumentSymbol implements WithRange {
     }
   }
 
+  /**
+   * Elements are equal if they have the same name, kind, and ranges.
+   * Incomplete elements, without a range, are only equal to themselves.
+   */
   @Override
-  @Pure
-  public int hashCode() {
-    if (stableHash != 0) {
-      return stableHash;
-    }
-
-    final int prime = 31;
-    int result = 1;
-
-    boolean incomplete = false;
-
-    if (getName() == null) {
-      incomplete = true;
-      result = prime * result;
-    } else {
-      result = prime * result + getName().hashCode();
-    }
-
-    result = prime * result + ((getKind() == null) ? 0 : getKind().hashCode());
-
-    if (getRange() == null) {
-      incomplete = true;
-      result = prime * result;
-    } else {
-      result = prime * result + getRange().hashCode();
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
     }
-
-    if (getSelectionRange() == null) {
-      incomplete = true;
-      result = prime * result;
-    } else {
-      result = prime * result + getSelectionRange().hashCode();
-    }
-
-    result = prime * result + ((getDetail() == null) ? 0 : getDetail().hashCode());
-    result = prime * result + ((getTags() == null) ? 0 : getTags().hashCode());
-
-    if (incomplete) {
-      // the idea here is that we have a stable, predictable hash if the element is complete
-      // but are happy with just a stable hash if it is incomplete,
-      // when we requested the hash for the first time
-      result = prime * result + System.identityHashCode(this);
+    if (!(obj instanceof LanguageElement o) || start == PackedRange.NONE
+        || o.start == PackedRange.NONE) {
+      return false;
     }
+    return start == o.start && end == o.end && selectionStart == o.selectionStart
+        && selectionEnd == o.selectionEnd && kind == o.kind && Objects.equals(name, o.name);
+  }
 
-    stableHash = prime * result + ((getChildren() == null) ? 0 : getChildren().hashCode());
+  /**
+   * Only the kind and the full range are hashed. They do not change once the
+   * element is complete, while the Newspeak parser still sets the identifier
+   * range of class-side elements afterwards.
+   */
+  @Override
+  public int hashCode() {
+    int result = Objects.hashCode(kind);
+    result = 31 * result + Long.hashCode(start);
+    return 31 * result + Long.hashCode(end);
+  }
 
-    return stableHash;
+  @Override
+  public String toString() {
+    return "LanguageElement(" + name + ", " + kind + ")";
   }
 }
@@ -1,32 +1,21 @@
 package som.langserv.structure;
 
+/**
+ * Identifies elements, and relates references to their definitions.
+ *
+ * Ids are keys in the maps of all documents and indexes. Subclasses for ids
+ * that are meaningful across documents share equal ids in an {@link IdInterner},
+ * so that most comparisons succeed on identity, and precompute their hash.
+ */
 public abstract class LanguageElementId {
 
   public boolean matches(final String query) {
-    String name = getName();
-    return fuzzyMatch(name, query);
+    return matchScore(query) != FuzzyMatcher.NO_MATCH;
   }
 
-  private static boolean fuzzyMatch(final String name, final String query) {
-    if (query == null) {
-      return true;
-    }
-
-    String nameLow = name.toLowerCase();
-    String queryLow = query.toLowerCase();
-
-    // trivial case
-    if (queryLow.equals(nameLow)) {
-      return true;
-    }
-
-    // simple prefix
-    if (nameLow.startsWith(queryLow)) {
-      return true;
-    }
-
-    // TODO: camel case matching etc...
-    return false;
+  /** @return the score of matching the query, see {@link FuzzyMatcher} */
+  public int matchScore(final String query) {
+    return FuzzyMatcher.score(getName(), query);
   }
 
   /**
@@ -0,0 +1,58 @@
+package som.langserv.structure;
+
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+
+
+/**
+ * Encodes positions as {@code line << 32 | character} in a single long, so
+ * that elements and references can store their ranges in two longs instead of
+ * a {@link Range} with two {@link Position} objects.
+ *
+ * Encoded positions compare like the positions themselves, so that a range
+ * contains a position if {@code start <= pos <= end}. {@link Range} objects
+ * are only created when a response is sent to the client.
+ */
+public final class PackedRange {
+
+  /** The start and end of a range that was not set. */
+  public static final long NONE = Long.MIN_VALUE;
+
+  private PackedRange() {}
+
+  public static long pack(final Position pos) {
+    return ((long) pos.getLine() << 32) | (pos.getCharacter() & 0xFFFFFFFFL);
+  }
+
+  public static long start(final Range range) {
+    return range == null ? NONE : pack(range.getStart());
+  }
+
+  public static long end(final Range range) {
+    return range == null ? NONE : pack(range.getEnd());
+  }
+
+  public static int line(final long pos) {
+    return (int) (pos >> 32);
+  }
+
+  public static int character(final long pos) {
+    return (int) pos;
+  }
+
+  public static Position toPosition(final long pos) {
+    return new Position(line(pos), character(pos));
+  }
+
+  /** @return the range, or {@code null} if it was not set */
+  public static Range toRange(final long start, final long end) {
+    if (start == NONE) {
+      return null;
+    }
+    return new Range(toPosition(start), toPosition(end));
+  }
+
+  public static boolean contains(final long start, final long end, final long pos) {
+    return start != NONE && start <= pos && pos <= end;
+  }
+}
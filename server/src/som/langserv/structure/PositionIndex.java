@@ -0,0 +1,222 @@
+package som.langserv.structure;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.lsp4j.Position;
+
+
+/**
+ * Finds the innermost element or reference at a position.
+ *
+ * The index flattens the tree of elements into arrays. The children of an
+ * element, and its references, are each stored in a contiguous slice, sorted
+ * by their start. Positions are encoded by {@link PackedRange}, so that a
+ * range contains a position if {@code start <= pos <= end}.
+ *
+ * If the ranges in a slice do not overlap, which is the common case, at most
+ * one of them contains a position, and we find it with a binary search.
+ * Otherwise, we scan the slice in the original order, so that the result is
+ * the same as when walking the tree.
+ */
+final class PositionIndex {
+
+  private static final long EMPTY_START = Long.MAX_VALUE;
+  private static final long EMPTY_END   = Long.MIN_VALUE;
+
+  private WithRange[] entries;
+  private long[]      starts;
+  private long[]      ends;
+
+  /** Slice of the children of an element entry, or -1. */
+  private int[] childSlice;
+
+  /** Slice of the references of an element entry, or -1. */
+  private int[] refSlice;
+
+  private int numEntries;
+
+  private int[]     sliceFrom;
+  private int[]     sliceTo;
+  private boolean[] sliceDisjoint;
+
+  private int numSlices;
+
+  private final int rootSlice;
+
+  PositionIndex(final List<LanguageElement> rootSymbols) {
+    entries = new WithRange[64];
+    starts = new long[64];
+    ends = new long[64];
+    childSlice = new int[64];
+    refSlice = new int[64];
+
+    sliceFrom = new int[16];
+    sliceTo = new int[16];
+    sliceDisjoint = new boolean[16];
+
+    rootSlice = addSlice(rootSymbols);
+  }
+
+  private int addSlice(final List<? extends WithRange> list) {
+    if (list == null || list.isEmpty()) {
+      return -1;
+    }
+
+    int slice = numSlices;
+    if (slice == sliceFrom.length) {
+      sliceFrom = Arrays.copyOf(sliceFrom, slice * 2);
+      sliceTo = Arrays.copyOf(sliceTo, slice * 2);
+      sliceDisjoint = Arrays.copyOf(sliceDisjoint, slice * 2);
+    }
+    numSlices += 1;
+
+    // first, reserve the entries of this slice, so that they are contiguous
+    int from = numEntries;
+    int to = from + list.size();
+    ensureCapacity(to);
+    numEntries = to;
+
+    fill(list, from);
+
+    sliceFrom[slice] = from;
+    sliceTo[slice] = to;
+    sliceDisjoint[slice] = sortIfDisjoint(from, to);
+    if (!sliceDisjoint[slice]) {
+      // we need to scan in the original order
+      fill(list, from);
+    }
+
+    // then, add the slices of the children and references
+    for (int i = from; i < to; i += 1) {
+      if (entries[i] instanceof LanguageElement le) {
+        int children = addSlice(le.getAllChildren());
+        int refs = addSlice(le.getReferences());
+        childSlice[i] = children;
+        refSlice[i] = refs;
+      } else {
+        childSlice[i] = -1;
+        refSlice[i] = -1;
+      }
+    }
+
+    return slice;
+  }
+
+  private void fill(final List<? extends WithRange> list, final int from) {
+    for (int i = 0; i < list.size(); i += 1) {
+      WithRange e = list.get(i);
+      boolean empty = e.getStart() == PackedRange.NONE;
+      entries[from + i] = e;
+      starts[from + i] = empty ? EMPTY_START : e.getStart();
+      ends[from + i] = empty ? EMPTY_END : e.getEnd();
+    }
+  }
+
+  private void ensureCapacity(final int size) {
+    if (size <= entries.length) {
+      return;
+    }
+
+    int capacity = Math.max(size, entries.length * 2);
+    entries = Arrays.copyOf(entries, capacity);
+    starts = Arrays.copyOf(starts, capacity);
+    ends = Arrays.copyOf(ends, capacity);
+    childSlice = Arrays.copyOf(childSlice, capacity);
+    refSlice = Arrays.copyOf(refSlice, capacity);
+  }
+
+  /**
+   * Sort the entries by their start.
+   *
+   * @return true if none of the ranges overlap
+   */
+  private boolean sortIfDisjoint(final int from, final int to) {
+    // insertion sort, the lists are typically in order, or nearly so
+    for (int i = from + 1; i < to; i += 1) {
+      WithRange e = entries[i];
+      long start = starts[i];
+      long end = ends[i];
+      int j = i - 1;
+      while (j >= from && starts[j] > start) {
+        entries[j + 1] = entries[j];
+        starts[j + 1] = starts[j];
+        ends[j + 1] = ends[j];
+        j -= 1;
+      }
+      entries[j + 1] = e;
+      starts[j + 1] = start;
+      ends[j + 1] = end;
+    }
+
+    for (int i = from + 1; i < to; i += 1) {
+      if (starts[i] != EMPTY_START && ends[i - 1] >= starts[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return the innermost element or reference at the position, or {@code null} */
+  WithRange find(final Position pos) {
+    if (rootSlice < 0) {
+      return null;
+    }
+    return find(PackedRange.pack(pos), rootSlice);
+  }
+
+  private WithRange find(final long pos, final int slice) {
+    int i = lookup(pos, slice);
+    if (i < 0) {
+      return null;
+    }
+
+    if (childSlice[i] >= 0) {
+      WithRange child = find(pos, childSlice[i]);
+      if (child != null) {
+        return child;
+      }
+    }
+
+    if (refSlice[i] >= 0) {
+      int ref = lookup(pos, refSlice[i]);
+      if (ref >= 0) {
+        return entries[ref];
+      }
+    }
+
+    return entries[i];
+  }
+
+  private int lookup(final long pos, final int slice) {
+    int from = sliceFrom[slice];
+    int to = sliceTo[slice];
+
+    if (!sliceDisjoint[slice]) {
+      for (int i = from; i < to; i += 1) {
+        if (starts[i] <= pos && pos <= ends[i]) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    // find the last entry that starts at or before the position
+    int lo = from;
+    int hi = to;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (starts[mid] <= pos) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+
+    int i = lo - 1;
+    if (i >= from && pos <= ends[i]) {
+      return i;
+    }
+    return -1;
+  }
+}
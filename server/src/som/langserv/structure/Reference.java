@@ -10,14 +10,17 @@ public class Reference implements WithRange {
 
   public final LanguageElementId id;
 
-  private final Range range;
+  /** The range, encoded by {@link PackedRange}. */
+  private final long start;
+  private final long end;
 
   private boolean isWrite;
   private boolean isRead;
 
   public Reference(final LanguageElementId id, final Range range) {
     this.id = id;
-    this.range = range;
+    this.start = PackedRange.start(range);
+    this.end = PackedRange.end(range);
   }
 
   @Override
@@ -40,12 +43,22 @@ public class Reference implements WithRange {
 
   @Override
   public Range getRange() {
-    return range;
+    return PackedRange.toRange(start, end);
+  }
+
+  @Override
+  public long getStart() {
+    return start;
+  }
+
+  @Override
+  public long getEnd() {
+    return end;
   }
 
   public DocumentHighlight createHighlight() {
     DocumentHighlight highlight = new DocumentHighlight();
-    highlight.setRange(range);
+    highlight.setRange(getRange());
     highlight.setKind(getHighlightkind());
     return highlight;
   }
@@ -64,7 +77,7 @@ public class Reference implements WithRange {
 
   public Location createLocation(final String containerUri, final Range origin) {
     Location loc = new Location();
-    loc.setRange(range);
+    loc.setRange(getRange());
     loc.setUri(containerUri);
     return loc;
   }
@@ -0,0 +1,101 @@
+package som.langserv.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Indexes for each element id the documents that define or reference it, so
+ * that finding all references only needs to visit those documents.
+ */
+public final class ReferenceIndex extends DocumentIndex<ReferenceIndex.Entry> {
+
+  static final class Entry {
+    private final DocumentStructures     doc;
+    private final Set<LanguageElementId> ids;
+
+    /** Documents keep their position when they are replaced. */
+    private final long order;
+
+    Entry(final DocumentStructures doc, final Set<LanguageElementId> ids, final long order) {
+      this.doc = doc;
+      this.ids = ids;
+      this.order = order;
+    }
+  }
+
+  /** Element id to the normalized paths of the documents using it. */
+  private final Map<LanguageElementId, Set<String>> byId;
+
+  private long nextOrder;
+
+  public ReferenceIndex() {
+    this.byId = new HashMap<>();
+  }
+
+  @Override
+  protected Entry addEntries(final String normalizedPath, final DocumentStructures doc,
+      final Entry previous) {
+    long order = previous == null ? nextOrder++ : previous.order;
+
+    Set<LanguageElementId> ids = new HashSet<>();
+    var defs = doc.getAllDefinitions();
+    if (defs != null) {
+      ids.addAll(defs.keySet());
+    }
+    var refs = doc.getAllReferences();
+    if (refs != null) {
+      ids.addAll(refs.keySet());
+    }
+
+    for (LanguageElementId id : ids) {
+      byId.computeIfAbsent(id, k -> new HashSet<>(2)).add(normalizedPath);
+    }
+    return new Entry(doc, ids, order);
+  }
+
+  @Override
+  protected void removeEntries(final String normalizedPath, final Entry entry) {
+    for (LanguageElementId id : entry.ids) {
+      Set<String> paths = byId.get(id);
+      paths.remove(normalizedPath);
+      if (paths.isEmpty()) {
+        byId.remove(id);
+      }
+    }
+  }
+
+  /**
+   * @return the documents that define or reference the id, in the order in
+   *         which they were first added
+   */
+  public List<DocumentStructures> getDocuments(final LanguageElementId id) {
+    Entry[] entries;
+    synchronized (this) {
+      Set<String> paths = byId.get(id);
+      if (paths == null) {
+        return List.of();
+      }
+
+      entries = new Entry[paths.size()];
+      int i = 0;
+      for (String path : paths) {
+        entries[i] = getEntries(path);
+        i += 1;
+      }
+    }
+
+    Arrays.sort(entries, (a, b) -> Long.compare(a.order, b.order));
+
+    List<DocumentStructures> result = new ArrayList<>(entries.length);
+    for (Entry e : entries) {
+      result.add(e.doc);
+    }
+    return result;
+  }
+}
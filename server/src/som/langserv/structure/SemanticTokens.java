@@ -1,99 +1,252 @@
 package som.langserv.structure;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.SemanticTokensEdit;
 
+import util.PackedIntList;
 
+
+/**
+ * Collects the semantic tokens of a document.
+ *
+ * The tokens are stored packed in a single integer array, with
+ * {@link #TOKEN_SIZE} integers per token: line, column, length, token type, and
+ * token modifiers.
+ */
 public class SemanticTokens {
 
+  public static final int TOKEN_SIZE = 5;
+
+  private static final int LINE = 0;
+  private static final int COL  = 1;
+
+  private int[]   tokens;
+  private int     size;
   private boolean isSorted;
 
+  /** Once frozen, the tokens are sorted and cannot be changed anymore. */
+  private volatile boolean frozen;
+
   public SemanticTokens() {
-    this.semanticTokens = new ArrayList<>();
-    this.isSorted = false;
+    this.tokens = new int[TOKEN_SIZE * 32];
+    this.size = 0;
+    this.isSorted = true;
   }
 
-  private final List<int[]> semanticTokens;
+  /**
+   * Sort the tokens, and reject any further tokens, so that they can be read
+   * from multiple threads without locking.
+   */
+  public void freeze() {
+    if (!isSorted) {
+      sort(tokens, size);
+      isSorted = true;
+    }
+    frozen = true;
+  }
+
+  /**
+   * @return the sorted tokens as a packed list of integers, without copying
+   *         once frozen. Before, the tokens may still be sorted in place, so
+   *         the result is a copy.
+   */
+  public PackedIntList getPackedTokens() {
+    if (frozen) {
+      return new PackedIntList(tokens, 0, size);
+    }
 
-  public List<int[]> getSemanticTokens() {
     if (!isSorted) {
-      sort(semanticTokens);
+      sort(tokens, size);
       isSorted = true;
     }
-    return semanticTokens;
+    return new PackedIntList(Arrays.copyOf(tokens, size));
+  }
+
+  /**
+   * @return the sorted tokens as one array per token, for instance for tests
+   */
+  public List<int[]> getSemanticTokens() {
+    return unpack(getPackedTokens());
   }
 
   public void addSemanticToken(final int lineNumber, final int startingChar,
       final int length, final SemanticTokenType tokenType,
       final SemanticTokenModifier... tokenModifiers) {
-    isSorted = false;
-    assert semanticTokens != null;
-
-    int[] tuple = new int[5];
-
-    tuple[0] = lineNumber;
-    tuple[1] = startingChar;
-    tuple[2] = length;
-    tuple[3] = tokenType.ordinal();
+    if (frozen) {
+      throw new IllegalStateException("Semantic tokens are frozen");
+    }
 
     if (tokenModifiers != null && tokenModifiers.length > 0) {
       throw new RuntimeException(
           "Not yet implemented. Need to turn the array into setting bits on a integer. "
               + "See description after https://microsoft.github.io/language-server-protocol/specifications/lsp/3.17/specification/#semanticTokensLegend");
-    } else {
-      tuple[4] = 0;
     }
 
-    semanticTokens.add(tuple);
+    if (size == tokens.length) {
+      tokens = Arrays.copyOf(tokens, tokens.length * 2);
+    }
+
+    if (size > 0) {
+      int prevLine = tokens[size - TOKEN_SIZE + LINE];
+      int prevCol = tokens[size - TOKEN_SIZE + COL];
+      if (prevLine > lineNumber || (prevLine == lineNumber && prevCol > startingChar)) {
+        isSorted = false;
+      }
+    }
+
+    tokens[size] = lineNumber;
+    tokens[size + 1] = startingChar;
+    tokens[size + 2] = length;
+    tokens[size + 3] = tokenType.ordinal();
+    tokens[size + 4] = 0;
+    size += TOKEN_SIZE;
   }
 
   /**
-   * Make tokens relative to 1-based line and column indexes, and return a flat list of
+   * Make tokens relative to 0-based line and column indexes, and return a flat list of
    * integers.
    */
-  public static List<Integer> makeRelativeTo00(final List<int[]> tokenList) {
-    return makeRelative(tokenList, 0, 0);
+  public static PackedIntList makeRelativeTo00(final PackedIntList tokens) {
+    return makeRelative(tokens, 0, 0);
   }
 
   /**
    * Make tokens relative to 1-based line and column indexes, and return a flat list of
    * integers.
    */
-  public static List<Integer> makeRelativeTo11(final List<int[]> tokenList) {
-    return makeRelative(tokenList, 1, 1);
+  public static PackedIntList makeRelativeTo11(final PackedIntList tokens) {
+    return makeRelative(tokens, 1, 1);
   }
 
-  public static List<Integer> makeRelative(final List<int[]> tokenList, final int baseLine,
+  public static PackedIntList makeRelative(final PackedIntList tokens, final int baseLine,
       final int baseCol) {
-    List<Integer> result = new ArrayList<>(tokenList.size() * 5);
+    int[] result = new int[tokens.size()];
 
     int prevLine = baseLine;
     int prevCol = baseCol;
 
-    for (int[] token : tokenList) {
-      int diffLine = token[0] - prevLine;
-      result.add(diffLine);
+    for (int i = 0; i < result.length; i += TOKEN_SIZE) {
+      int line = tokens.getInt(i + LINE);
+      int col = tokens.getInt(i + COL);
+
+      int diffLine = line - prevLine;
+      result[i] = diffLine;
 
       if (diffLine != 0) {
-        prevLine = token[0];
+        prevLine = line;
         prevCol = baseCol;
       }
 
-      int diffCol = token[1] - prevCol;
-      result.add(diffCol);
-      prevCol = token[1];
+      result[i + 1] = col - prevCol;
+      prevCol = col;
 
       // add the remaining details: length, token type, token modifier
-      result.add(token[2]);
-      result.add(token[3]);
-      result.add(token[4]);
+      result[i + 2] = tokens.getInt(i + 2);
+      result[i + 3] = tokens.getInt(i + 3);
+      result[i + 4] = tokens.getInt(i + 4);
+    }
+
+    return new PackedIntList(result);
+  }
+
+  /**
+   * Make tokens relative to 0-based line and column indexes, and return a flat list of
+   * integers.
+   */
+  public static List<Integer> makeRelativeTo00(final List<int[]> tokenList) {
+    return makeRelative(pack(tokenList), 0, 0);
+  }
+
+  /**
+   * Make tokens relative to 1-based line and column indexes, and return a flat list of
+   * integers.
+   */
+  public static List<Integer> makeRelativeTo11(final List<int[]> tokenList) {
+    return makeRelative(pack(tokenList), 1, 1);
+  }
+
+  public static PackedIntList pack(final List<int[]> tokenList) {
+    int[] result = new int[tokenList.size() * TOKEN_SIZE];
+    int i = 0;
+    for (int[] token : tokenList) {
+      System.arraycopy(token, 0, result, i, TOKEN_SIZE);
+      i += TOKEN_SIZE;
     }
+    return new PackedIntList(result);
+  }
 
+  public static List<int[]> unpack(final PackedIntList tokens) {
+    List<int[]> result = new ArrayList<>(tokens.size() / TOKEN_SIZE);
+    for (int i = 0; i < tokens.size(); i += TOKEN_SIZE) {
+      int[] tuple = new int[TOKEN_SIZE];
+      tokens.copyTo(i, tuple, 0, TOKEN_SIZE);
+      result.add(tuple);
+    }
     return result;
   }
 
+  /**
+   * Compute a single edit that turns the previous encoded tokens into the
+   * current ones, by skipping the common prefix and suffix.
+   *
+   * @return the edit, or {@code null} if both are identical
+   */
+  public static SemanticTokensEdit computeEdit(final PackedIntList previous,
+      final PackedIntList current) {
+    int prevSize = previous.size();
+    int currSize = current.size();
+
+    int prefix = 0;
+    int maxPrefix = Math.min(prevSize, currSize);
+    while (prefix < maxPrefix && previous.getInt(prefix) == current.getInt(prefix)) {
+      prefix += 1;
+    }
+
+    if (prefix == prevSize && prefix == currSize) {
+      return null;
+    }
+
+    int suffix = 0;
+    int maxSuffix = maxPrefix - prefix;
+    while (suffix < maxSuffix
+        && previous.getInt(prevSize - 1 - suffix) == current.getInt(currSize - 1 - suffix)) {
+      suffix += 1;
+    }
+
+    return new SemanticTokensEdit(prefix, prevSize - prefix - suffix,
+        current.copy(prefix, currSize - suffix));
+  }
+
+  /**
+   * Select the tokens on the lines from {@code startLine} to {@code endLine},
+   * inclusive, using binary search on the sorted tokens.
+   */
+  public static PackedIntList selectLines(final PackedIntList sortedTokens,
+      final int startLine, final int endLine) {
+    int from = firstTokenOnOrAfterLine(sortedTokens, startLine);
+    int to = firstTokenOnOrAfterLine(sortedTokens, endLine + 1);
+    return sortedTokens.slice(from * TOKEN_SIZE, Math.max(from, to) * TOKEN_SIZE);
+  }
+
+  private static int firstTokenOnOrAfterLine(final PackedIntList sortedTokens,
+      final int line) {
+    int lo = 0;
+    int hi = sortedTokens.size() / TOKEN_SIZE;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (sortedTokens.getInt(mid * TOKEN_SIZE + LINE) < line) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
   public static List<int[]> sort(final List<int[]> in) {
     in.sort((final int[] a, final int[] b) -> {
       // sort by line
@@ -108,60 +261,115 @@ public class SemanticTokens {
     return in;
   }
 
-  public static List<int[]> combineTokensRemovingErroneousLine(final Position errorStart,
-      final List<int[]> prevTokens, final List<int[]> newTokens) {
-    int lineWithError = errorStart.getLine();
+  /**
+   * Sort the packed tokens by line and column. The sort is a stable merge sort,
+   * so that tokens at the same position stay in the order they were added.
+   */
+  public static void sort(final int[] tokens, final int size) {
+    int n = size / TOKEN_SIZE;
 
-    if (newTokens.isEmpty()) {
-      return filterOutLine(prevTokens, lineWithError);
-    }
+    int[] src = tokens;
+    int[] dst = new int[size];
 
-    List<int[]> newBeforeError =
-        filterOutFromError(newTokens, lineWithError, errorStart.getCharacter());
+    for (int width = 1; width < n; width *= 2) {
+      for (int lo = 0; lo < n; lo += 2 * width) {
+        int mid = Math.min(lo + width, n);
+        int hi = Math.min(lo + 2 * width, n);
+        merge(src, dst, lo, mid, hi);
+      }
 
-    if (prevTokens != null) {
-      List<int[]> oldTokensAfterError =
-          filterOutUpToAndIncludingLine(prevTokens, lineWithError);
-      newBeforeError.addAll(oldTokensAfterError);
+      int[] tmp = src;
+      src = dst;
+      dst = tmp;
     }
-    return newBeforeError;
-  }
 
-  private static List<int[]> filterOutLine(final List<int[]> in, final int line) {
-    ArrayList<int[]> result = new ArrayList<>(in.size());
+    if (src != tokens) {
+      System.arraycopy(src, 0, tokens, 0, size);
+    }
+  }
 
-    for (int[] tokenTuple : in) {
-      if (tokenTuple[0] != line) {
-        result.add(tokenTuple);
+  private static void merge(final int[] src, final int[] dst, final int lo, final int mid,
+      final int hi) {
+    int i = lo;
+    int j = mid;
+    for (int k = lo; k < hi; k += 1) {
+      int from;
+      if (i < mid && (j >= hi || compare(src, i, j) <= 0)) {
+        from = i;
+        i += 1;
+      } else {
+        from = j;
+        j += 1;
       }
+      System.arraycopy(src, from * TOKEN_SIZE, dst, k * TOKEN_SIZE, TOKEN_SIZE);
     }
+  }
 
-    return result;
+  private static int compare(final int[] tokens, final int a, final int b) {
+    int diff = tokens[a * TOKEN_SIZE + LINE] - tokens[b * TOKEN_SIZE + LINE];
+    if (diff != 0) {
+      return diff;
+    }
+    return tokens[a * TOKEN_SIZE + COL] - tokens[b * TOKEN_SIZE + COL];
   }
 
-  private static List<int[]> filterOutUpToAndIncludingLine(final List<int[]> in,
-      final int line) {
-    ArrayList<int[]> result = new ArrayList<>(in.size());
+  public static List<int[]> combineTokensRemovingErroneousLine(final Position errorStart,
+      final List<int[]> prevTokens, final List<int[]> newTokens) {
+    return unpack(combineTokensRemovingErroneousLine(errorStart,
+        prevTokens == null ? null : pack(prevTokens), pack(newTokens)));
+  }
 
-    for (int[] tokenTuple : in) {
-      if (tokenTuple[0] > line) {
-        result.add(tokenTuple);
-      }
+  public static PackedIntList combineTokensRemovingErroneousLine(final Position errorStart,
+      final PackedIntList prevTokens, final PackedIntList newTokens) {
+    int lineWithError = errorStart.getLine();
+    int errorCol = errorStart.getCharacter();
+
+    if (newTokens.isEmpty()) {
+      int[] result = new int[prevTokens.size()];
+      int size = copyTokens(prevTokens, Keep.NOT_ON_LINE, lineWithError, errorCol, result, 0);
+      return new PackedIntList(result, 0, size);
     }
 
-    return result;
+    int[] result = new int[newTokens.size() + (prevTokens == null ? 0 : prevTokens.size())];
+    int size = copyTokens(newTokens, Keep.BEFORE_ERROR, lineWithError, errorCol, result, 0);
+
+    if (prevTokens != null) {
+      size = copyTokens(prevTokens, Keep.AFTER_LINE, lineWithError, errorCol, result, size);
+    }
+    return new PackedIntList(result, 0, size);
   }
 
-  private static List<int[]> filterOutFromError(final List<int[]> in, final int line,
-      final int col) {
-    ArrayList<int[]> result = new ArrayList<>(in.size());
+  private enum Keep {
+    BEFORE_ERROR,
+    NOT_ON_LINE,
+    AFTER_LINE
+  }
 
-    for (int[] tokenTuple : in) {
-      if (tokenTuple[0] < line || (tokenTuple[0] == line && tokenTuple[1] < col)) {
-        result.add(tokenTuple);
+  private static int copyTokens(final PackedIntList in, final Keep keep, final int line,
+      final int col, final int[] result, final int start) {
+    int size = start;
+    for (int i = 0; i < in.size(); i += TOKEN_SIZE) {
+      int tokenLine = in.getInt(i + LINE);
+      int tokenCol = in.getInt(i + COL);
+
+      boolean copy;
+      switch (keep) {
+        case BEFORE_ERROR:
+          copy = tokenLine < line || (tokenLine == line && tokenCol < col);
+          break;
+        case NOT_ON_LINE:
+          copy = tokenLine != line;
+          break;
+        default:
+          copy = tokenLine > line;
+          break;
       }
-    }
 
-    return result;
+      if (copy) {
+        in.copyTo(i, result, size, TOKEN_SIZE);
+        size += TOKEN_SIZE;
+      }
+    }
+    return size;
   }
 }
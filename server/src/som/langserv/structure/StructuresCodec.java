@@ -0,0 +1,436 @@
+package som.langserv.structure;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.eclipse.lsp4j.Diagnostic;
+import org.eclipse.lsp4j.DiagnosticSeverity;
+import org.eclipse.lsp4j.DocumentHighlightKind;
+import org.eclipse.lsp4j.ParameterInformation;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SignatureInformation;
+import org.eclipse.lsp4j.SymbolKind;
+
+import util.PackedIntList;
+
+
+/**
+ * Writes the navigation data of a {@link DocumentStructures} to a binary
+ * stream and reads it back, for instance to cache it on disk.
+ *
+ * Ids that are meaningful across documents are encoded with a key from which
+ * the adapter recreates an equal id. All other ids are replaced by ids that are
+ * only equal to themselves, which is sufficient within a single document.
+ */
+public final class StructuresCodec {
+
+  private StructuresCodec() {}
+
+  private static final class DocumentLocalId extends LanguageElementId {
+    private final String name;
+
+    DocumentLocalId(final String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(this);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      return this == obj;
+    }
+  }
+
+  public static void write(final DocumentStructures doc, final DataOutput out,
+      final Function<LanguageElementId, String> encodeId) throws IOException {
+    writeString(doc.getRemoteUri(), out);
+    writeString(doc.getNormalizedUri(), out);
+
+    writeDiagnostics(doc.getDiagnostics(), out);
+
+    PackedIntList tokens = doc.getSemanticTokens().getPackedTokens();
+    out.writeInt(tokens.size());
+    for (int i = 0; i < tokens.size(); i += 1) {
+      out.writeInt(tokens.getInt(i));
+    }
+
+    // number the elements in pre-order, and collect all ids
+    Map<LanguageElement, Integer> elements = new IdentityHashMap<>();
+    List<LanguageElement> elementList = new ArrayList<>();
+    Map<LanguageElementId, Integer> ids = new HashMap<>();
+    List<LanguageElementId> idList = new ArrayList<>();
+    numberElements(doc.getRootSymbols(), elements, elementList, ids, idList);
+
+    Map<Reference, Integer> refs = new IdentityHashMap<>();
+    List<Reference> refList = new ArrayList<>();
+    if (doc.getAllReferences() != null) {
+      for (List<Reference> rs : doc.getAllReferences().values()) {
+        for (Reference r : rs) {
+          refs.put(r, refList.size());
+          refList.add(r);
+          numberId(r.getId(), ids, idList);
+        }
+      }
+    }
+
+    out.writeInt(idList.size());
+    for (LanguageElementId id : idList) {
+      writeString(encodeId.apply(id), out);
+      writeString(id.getName(), out);
+    }
+
+    out.writeInt(refList.size());
+    for (Reference r : refList) {
+      out.writeInt(ids.get(r.getId()));
+      writeRange(r.getRange(), out);
+      out.writeByte(r.getHighlightkind().getValue());
+    }
+
+    out.writeInt(elementList.size());
+    for (LanguageElement e : elementList) {
+      writeElement(e, out, elements, ids, refs);
+    }
+
+    writeIndexes(doc.getRootSymbols(), elements, out);
+    writeIndexes(doc.getRootReferences(), refs, out);
+    writeIndexes(doc.getAfterNavigationSymbols(), elements, out);
+
+    Map<LanguageElementId, Set<LanguageElement>> defs = doc.getAllDefinitions();
+    if (defs == null) {
+      out.writeInt(-1);
+    } else {
+      List<LanguageElement> defList = new ArrayList<>();
+      for (Set<LanguageElement> es : defs.values()) {
+        defList.addAll(es);
+      }
+      writeIndexes(defList, elements, out);
+    }
+  }
+
+  private static void numberElements(final List<LanguageElement> es,
+      final Map<LanguageElement, Integer> elements, final List<LanguageElement> elementList,
+      final Map<LanguageElementId, Integer> ids, final List<LanguageElementId> idList) {
+    if (es == null) {
+      return;
+    }
+
+    for (LanguageElement e : es) {
+      elements.put(e, elementList.size());
+      elementList.add(e);
+      if (e.hasId()) {
+        numberId(e.getId(), ids, idList);
+      }
+      numberElements(e.getAllChildren(), elements, elementList, ids, idList);
+    }
+  }
+
+  private static void numberId(final LanguageElementId id,
+      final Map<LanguageElementId, Integer> ids, final List<LanguageElementId> idList) {
+    if (!ids.containsKey(id)) {
+      ids.put(id, idList.size());
+      idList.add(id);
+    }
+  }
+
+  private static void writeElement(final LanguageElement e, final DataOutput out,
+      final Map<LanguageElement, Integer> elements, final Map<LanguageElementId, Integer> ids,
+      final Map<Reference, Integer> refs) throws IOException {
+    out.writeInt(e.getKind().getValue());
+    out.writeBoolean(e.isListedAsSymbol());
+    out.writeInt(e.hasId() ? ids.get(e.getId()) : -1);
+    writeString(e.getName(), out);
+    writeString(e.getDetail(), out);
+    writeRange(e.getRange(), out);
+    writeRange(e.getSelectionRange(), out);
+    writeSignature(e.getSignature(), out);
+    writeIndexes(e.getAllChildren(), elements, out);
+    writeIndexes(e.getReferences(), refs, out);
+  }
+
+  private static <T> void writeIndexes(final List<T> list, final Map<T, Integer> indexes,
+      final DataOutput out) throws IOException {
+    if (list == null) {
+      out.writeInt(-1);
+      return;
+    }
+
+    out.writeInt(list.size());
+    for (T e : list) {
+      out.writeInt(indexes.get(e));
+    }
+  }
+
+  private static void writeDiagnostics(final List<Diagnostic> diagnostics,
+      final DataOutput out) throws IOException {
+    if (diagnostics == null) {
+      out.writeInt(-1);
+      return;
+    }
+
+    out.writeInt(diagnostics.size());
+    for (Diagnostic d : diagnostics) {
+      writeRange(d.getRange(), out);
+      out.writeInt(d.getSeverity() == null ? 0 : d.getSeverity().getValue());
+      writeString(d.getMessage(), out);
+      writeString(d.getSource(), out);
+      // only used to mark navigation errors
+      out.writeBoolean(d.getData() == Boolean.TRUE);
+    }
+  }
+
+  private static void writeSignature(final SignatureInformation sig, final DataOutput out)
+      throws IOException {
+    if (sig == null) {
+      out.writeBoolean(false);
+      return;
+    }
+
+    out.writeBoolean(true);
+    writeString(sig.getLabel(), out);
+
+    List<ParameterInformation> params = sig.getParameters();
+    if (params == null) {
+      out.writeInt(-1);
+      return;
+    }
+
+    out.writeInt(params.size());
+    for (ParameterInformation p : params) {
+      var label = p.getLabel();
+      writeString(label != null && label.isLeft() ? label.getLeft() : null, out);
+    }
+  }
+
+  private static void writeRange(final Range r, final DataOutput out) throws IOException {
+    if (r == null) {
+      out.writeBoolean(false);
+      return;
+    }
+
+    out.writeBoolean(true);
+    out.writeInt(r.getStart().getLine());
+    out.writeInt(r.getStart().getCharacter());
+    out.writeInt(r.getEnd().getLine());
+    out.writeInt(r.getEnd().getCharacter());
+  }
+
+  private static void writeString(final String s, final DataOutput out) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  public static DocumentStructures read(final DataInput in,
+      final Function<String, LanguageElementId> decodeId) throws IOException {
+    DocumentStructures doc = new DocumentStructures(readString(in), readString(in));
+
+    readDiagnostics(doc, in);
+
+    SemanticTokenType[] types = SemanticTokenType.values();
+    int numTokenInts = in.readInt();
+    for (int i = 0; i < numTokenInts; i += SemanticTokens.TOKEN_SIZE) {
+      int line = in.readInt();
+      int col = in.readInt();
+      int length = in.readInt();
+      int type = in.readInt();
+      in.readInt(); // modifiers are not yet supported
+      doc.getSemanticTokens().addSemanticToken(line, col, length, types[type]);
+    }
+
+    LanguageElementId[] ids = new LanguageElementId[in.readInt()];
+    for (int i = 0; i < ids.length; i += 1) {
+      String key = readString(in);
+      String name = readString(in);
+      ids[i] = key == null ? new DocumentLocalId(name) : decodeId.apply(key);
+    }
+
+    Reference[] refs = new Reference[in.readInt()];
+    for (int i = 0; i < refs.length; i += 1) {
+      Reference r = new Reference(ids[in.readInt()], readRange(in));
+      DocumentHighlightKind kind = DocumentHighlightKind.forValue(in.readByte());
+      if (kind == DocumentHighlightKind.Write) {
+        r.markAsWrite();
+      } else if (kind == DocumentHighlightKind.Read) {
+        r.markAsRead();
+      }
+      refs[i] = r;
+      doc.restoreReference(r);
+    }
+
+    // the elements are written in pre-order, and link to their children
+    // by index, so we create them all first, and connect them afterwards
+    int numElements = in.readInt();
+    LanguageElement[] elements = new LanguageElement[numElements];
+    int[][] children = new int[numElements][];
+    int[][] contained = new int[numElements][];
+    for (int i = 0; i < numElements; i += 1) {
+      SymbolKind kind = SymbolKind.forValue(in.readInt());
+      LanguageElement e = new LanguageElement(kind, in.readBoolean());
+      int id = in.readInt();
+      if (id >= 0) {
+        e.setId(ids[id]);
+      }
+      String name = readString(in);
+      if (name != null) {
+        e.setName(name);
+      }
+      e.setDetail(readString(in));
+      Range range = readRange(in);
+      if (range != null) {
+        e.setRange(range);
+      }
+      Range selection = readRange(in);
+      if (selection != null) {
+        e.setSelectionRange(selection);
+      }
+      e.setSignature(readSignature(in));
+      elements[i] = e;
+      children[i] = readIndexes(in);
+      contained[i] = readIndexes(in);
+    }
+
+    for (int i = 0; i < numElements; i += 1) {
+      if (children[i] != null) {
+        for (int c : children[i]) {
+          elements[i].addChild(elements[c]);
+        }
+      }
+      if (contained[i] != null) {
+        for (int r : contained[i]) {
+          elements[i].addContained(refs[r]);
+        }
+      }
+    }
+
+    int[] roots = readIndexes(in);
+    for (int r : roots) {
+      doc.getRootSymbols().add(elements[r]);
+    }
+
+    int[] rootRefs = readIndexes(in);
+    if (rootRefs != null) {
+      for (int r : rootRefs) {
+        doc.restoreRootReference(refs[r]);
+      }
+    }
+
+    int[] afterNavigation = readIndexes(in);
+    if (afterNavigation != null) {
+      for (int e : afterNavigation) {
+        doc.restoreAfterNavigationSymbol(elements[e]);
+      }
+    }
+
+    int[] defs = readIndexes(in);
+    if (defs != null) {
+      for (int e : defs) {
+        doc.restoreDefinition(elements[e]);
+      }
+    }
+
+    return doc;
+  }
+
+  private static int[] readIndexes(final DataInput in) throws IOException {
+    int size = in.readInt();
+    if (size < 0) {
+      return null;
+    }
+
+    int[] result = new int[size];
+    for (int i = 0; i < size; i += 1) {
+      result[i] = in.readInt();
+    }
+    return result;
+  }
+
+  private static void readDiagnostics(final DocumentStructures doc, final DataInput in)
+      throws IOException {
+    int size = in.readInt();
+    for (int i = 0; i < size; i += 1) {
+      Diagnostic d = new Diagnostic();
+      d.setRange(readRange(in));
+      int severity = in.readInt();
+      if (severity != 0) {
+        d.setSeverity(DiagnosticSeverity.forValue(severity));
+      }
+      d.setMessage(readString(in));
+      d.setSource(readString(in));
+      if (in.readBoolean()) {
+        d.setData(Boolean.TRUE);
+      }
+      doc.addDiagnostic(d);
+    }
+  }
+
+  private static SignatureInformation readSignature(final DataInput in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+
+    SignatureInformation sig = new SignatureInformation();
+    String label = readString(in);
+    if (label != null) {
+      sig.setLabel(label);
+    }
+
+    int numParams = in.readInt();
+    if (numParams >= 0) {
+      List<ParameterInformation> params = new ArrayList<>(numParams);
+      for (int i = 0; i < numParams; i += 1) {
+        ParameterInformation p = new ParameterInformation();
+        String paramLabel = readString(in);
+        if (paramLabel != null) {
+          p.setLabel(paramLabel);
+        }
+        params.add(p);
+      }
+      sig.setParameters(params);
+    }
+    return sig;
+  }
+
+  private static Range readRange(final DataInput in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+
+    Position start = new Position(in.readInt(), in.readInt());
+    Position end = new Position(in.readInt(), in.readInt());
+    return new Range(start, end);
+  }
+
+  private static String readString(final DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
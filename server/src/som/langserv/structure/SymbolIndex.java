@@ -0,0 +1,153 @@
+package som.langserv.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.lsp4j.SymbolInformation;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+
+
+/**
+ * Indexes the definitions of all documents by their lowercased name, to
+ * answer workspace symbol queries without visiting every definition.
+ *
+ * The names are kept in a sorted map, so that the definitions with a given
+ * prefix are found with a range lookup.
+ */
+public final class SymbolIndex extends DocumentIndex<List<SymbolIndex.Entry>> {
+
+  static final class Entry {
+    private final String          name;
+    private final String          lowerName;
+    private final LanguageElement element;
+    private final String          uri;
+
+    Entry(final String name, final String lowerName, final LanguageElement element,
+        final String uri) {
+      this.name = name;
+      this.lowerName = lowerName;
+      this.element = element;
+      this.uri = uri;
+    }
+  }
+
+  /** Lowercased name to the definitions with that name. */
+  private final TreeMap<String, List<Entry>> byName;
+
+  public SymbolIndex() {
+    this.byName = new TreeMap<>();
+  }
+
+  @Override
+  protected List<Entry> addEntries(final String normalizedPath,
+      final DocumentStructures doc, final List<Entry> previous) {
+    Map<LanguageElementId, Set<LanguageElement>> defs = doc.getAllDefinitions();
+    if (defs == null) {
+      return null;
+    }
+
+    String uri = doc.getUri();
+    List<Entry> entries = new ArrayList<>(defs.size());
+    for (var e : defs.entrySet()) {
+      String name = e.getKey().getName();
+      String lowerName = name.toLowerCase(Locale.ROOT);
+      List<Entry> withName = byName.computeIfAbsent(lowerName, k -> new ArrayList<>(1));
+
+      for (LanguageElement element : e.getValue()) {
+        Entry entry = new Entry(name, lowerName, element, uri);
+        entries.add(entry);
+        withName.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  @Override
+  protected void removeEntries(final String normalizedPath, final List<Entry> entries) {
+    for (Entry e : entries) {
+      List<Entry> withName = byName.get(e.lowerName);
+      withName.remove(e);
+      if (withName.isEmpty()) {
+        byName.remove(e.lowerName);
+      }
+    }
+  }
+
+  /**
+   * Find the definitions of which the name starts with the query, ignoring
+   * case. The results are ranked: exact matches first, then matches with the
+   * same case as the query, then shorter names.
+   *
+   * @param limit the maximum number of results to add
+   */
+  public void find(final String query, final int limit,
+      final List<SymbolInformation> results, final CancelChecker cancelChecker) {
+    if (limit <= 0) {
+      return;
+    }
+
+    String q = query == null ? "" : query;
+    String lowerQuery = q.toLowerCase(Locale.ROOT);
+
+    Comparator<Entry> rank = rankFor(q, lowerQuery);
+    PriorityQueue<Entry> best = new PriorityQueue<>(Math.min(limit, 64), rank.reversed());
+
+    synchronized (this) {
+      for (var withName : byName.tailMap(lowerQuery, true).entrySet()) {
+        if (!withName.getKey().startsWith(lowerQuery)) {
+          // the names are sorted, so there are no further matches
+          break;
+        }
+
+        cancelChecker.checkCanceled();
+        for (Entry e : withName.getValue()) {
+          if (best.size() < limit) {
+            best.add(e);
+          } else if (rank.compare(e, best.peek()) < 0) {
+            best.poll();
+            best.add(e);
+          }
+        }
+      }
+    }
+
+    Entry[] sorted = best.toArray(new Entry[0]);
+    Arrays.sort(sorted, rank);
+    for (Entry e : sorted) {
+      results.add(e.element.createSymbolInfo(e.uri));
+    }
+  }
+
+  private static Comparator<Entry> rankFor(final String query, final String lowerQuery) {
+    return (a, b) -> {
+      int diff = Boolean.compare(!a.lowerName.equals(lowerQuery),
+          !b.lowerName.equals(lowerQuery));
+      if (diff != 0) {
+        return diff;
+      }
+
+      diff = Boolean.compare(!a.name.startsWith(query), !b.name.startsWith(query));
+      if (diff != 0) {
+        return diff;
+      }
+
+      diff = a.name.length() - b.name.length();
+      if (diff != 0) {
+        return diff;
+      }
+
+      diff = a.name.compareTo(b.name);
+      if (diff != 0) {
+        return diff;
+      }
+      return a.uri.compareTo(b.uri);
+    };
+  }
+}
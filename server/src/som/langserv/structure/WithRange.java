@@ -6,7 +6,14 @@ import org.eclipse.lsp4j.Range;
 public interface WithRange {
   LanguageElementId getId();
 
+  /** @return a new range, or {@code null} if the range was not set */
   Range getRange();
 
+  /** @return the start, encoded by {@link PackedRange}, or {@link PackedRange#NONE} */
+  long getStart();
+
+  /** @return the end, encoded by {@link PackedRange} */
+  long getEnd();
+
   String getName();
 }
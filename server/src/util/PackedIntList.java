@@ -0,0 +1,138 @@
+package util;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+
+/**
+ * An immutable list of integers backed by a slice of a primitive array.
+ *
+ * The protocol objects expect a {@code List<Integer>}, for instance for the
+ * semantic tokens. With this list, the integers only get boxed if a generic
+ * consumer asks for them. The {@link GsonAdapter} writes the integers directly
+ * to the JSON output.
+ */
+public final class PackedIntList extends AbstractList<Integer> implements RandomAccess {
+
+  private static final PackedIntList EMPTY = new PackedIntList(new int[0]);
+
+  private final int[] data;
+  private final int   offset;
+  private final int   size;
+
+  public PackedIntList(final int[] data) {
+    this(data, 0, data.length);
+  }
+
+  public PackedIntList(final int[] data, final int offset, final int size) {
+    assert 0 <= offset && 0 <= size && offset + size <= data.length;
+    this.data = data;
+    this.offset = offset;
+    this.size = size;
+  }
+
+  public static PackedIntList empty() {
+    return EMPTY;
+  }
+
+  public int getInt(final int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return data[offset + index];
+  }
+
+  @Override
+  public Integer get(final int index) {
+    return getInt(index);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** @return a view on the elements from {@code from}, inclusive, to {@code to}, exclusive */
+  public PackedIntList slice(final int from, final int to) {
+    assert 0 <= from && from <= to && to <= size;
+    return new PackedIntList(data, offset + from, to - from);
+  }
+
+  /** @return a copy of the elements from {@code from}, inclusive, to {@code to}, exclusive */
+  public PackedIntList copy(final int from, final int to) {
+    assert 0 <= from && from <= to && to <= size;
+    return new PackedIntList(Arrays.copyOfRange(data, offset + from, offset + to));
+  }
+
+  public void copyTo(final int from, final int[] dest, final int destPos, final int length) {
+    System.arraycopy(data, offset + from, dest, destPos, length);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 1;
+    for (int i = offset; i < offset + size; i += 1) {
+      result = 31 * result + data[i];
+    }
+    return result;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (o instanceof PackedIntList other) {
+      return Arrays.equals(data, offset, offset + size,
+          other.data, other.offset, other.offset + other.size);
+    }
+    return super.equals(o);
+  }
+
+  /**
+   * Writes the integers without boxing them. Needs to be registered for
+   * {@link PackedIntList} with the {@code GsonBuilder}.
+   */
+  public static final class GsonAdapter extends TypeAdapter<PackedIntList> {
+    @Override
+    public void write(final JsonWriter out, final PackedIntList value) throws IOException {
+      if (value == null) {
+        out.nullValue();
+        return;
+      }
+
+      out.beginArray();
+      for (int i = value.offset; i < value.offset + value.size; i += 1) {
+        out.value(value.data[i]);
+      }
+      out.endArray();
+    }
+
+    @Override
+    public PackedIntList read(final JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+
+      int[] result = new int[16];
+      int size = 0;
+
+      in.beginArray();
+      while (in.hasNext()) {
+        if (size == result.length) {
+          result = Arrays.copyOf(result, size * 2);
+        }
+        result[size] = in.nextInt();
+        size += 1;
+      }
+      in.endArray();
+
+      return new PackedIntList(result, 0, size);
+    }
+  }
+}
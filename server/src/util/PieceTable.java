@@ -0,0 +1,287 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * A piece table to apply range edits to a text without copying the whole text
+ * on every edit.
+ *
+ * The text is represented as a sequence of pieces, each referring either to the
+ * original text, or to an append-only buffer of inserted text. Edits only split
+ * pieces and append to the buffer. When a {@link #snapshot()} is taken, the
+ * table is compacted into a single piece again.
+ *
+ * Compacting is deliberate: the parsers need the text as a {@link String}, so
+ * each snapshot costs a copy of the text and a scan for line breaks anyway.
+ * The table saves the copies between snapshots, i.e., for all edits of a
+ * change batch, and for all batches that arrive before the scheduled parse
+ * asks for the text.
+ *
+ * Lines are separated by {@code '\n'}, which also covers {@code "\r\n"}.
+ * Columns are counted in UTF-16 code units, as in the language server protocol.
+ */
+public final class PieceTable {
+
+  private static final class Piece {
+    final boolean inAdded;
+    final int     start;
+    final int     length;
+    final int     lineBreaks;
+
+    Piece(final boolean inAdded, final int start, final int length, final int lineBreaks) {
+      this.inAdded = inAdded;
+      this.start = start;
+      this.length = length;
+      this.lineBreaks = lineBreaks;
+    }
+  }
+
+  private String original;
+
+  /** Sorted offsets of all {@code '\n'} characters in {@link #original}. */
+  private int[] originalBreaks;
+
+  private final StringBuilder added;
+
+  private final ArrayList<Piece> pieces;
+
+  private int length;
+
+  /** Cached materialized text, reset on every edit. */
+  private String snapshot;
+
+  public PieceTable(final String text) {
+    this.added = new StringBuilder();
+    this.pieces = new ArrayList<>();
+    reset(text);
+  }
+
+  /** Replace the whole content, for instance on a full-text change. */
+  public void reset(final String text) {
+    original = text;
+    originalBreaks = findBreaks(text);
+    added.setLength(0);
+    pieces.clear();
+    if (!text.isEmpty()) {
+      pieces.add(new Piece(false, 0, text.length(), originalBreaks.length));
+    }
+    length = text.length();
+    snapshot = text;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  public int getNumberOfPieces() {
+    return pieces.size();
+  }
+
+  /**
+   * Replace the text between the two 0-based positions with the given text.
+   */
+  public void replace(final int startLine, final int startChar, final int endLine,
+      final int endChar, final String text) {
+    int start = offsetAt(startLine, startChar);
+    int end = offsetAt(endLine, endChar);
+    replace(start, Math.max(start, end), text);
+  }
+
+  /**
+   * Replace the text in the offset range {@code [start, end)} with the given text.
+   */
+  public void replace(final int start, final int end, final String text) {
+    assert 0 <= start && start <= end && end <= length;
+
+    int idx = split(start);
+    int endIdx = split(end);
+
+    pieces.subList(idx, endIdx).clear();
+
+    if (!text.isEmpty()) {
+      int addedStart = added.length();
+      added.append(text);
+      pieces.add(idx, new Piece(true, addedStart, text.length(),
+          countBreaksInAdded(addedStart, addedStart + text.length())));
+    }
+
+    length += text.length() - (end - start);
+    snapshot = null;
+  }
+
+  /**
+   * Materialize the current text. The result is cached until the next edit, and
+   * the table is compacted into a single piece.
+   */
+  public String snapshot() {
+    if (snapshot != null) {
+      return snapshot;
+    }
+
+    StringBuilder sb = new StringBuilder(length);
+    for (Piece p : pieces) {
+      if (p.inAdded) {
+        sb.append(added, p.start, p.start + p.length);
+      } else {
+        sb.append(original, p.start, p.start + p.length);
+      }
+    }
+
+    reset(sb.toString());
+    return snapshot;
+  }
+
+  /**
+   * Convert a 0-based line and character position into an offset. As required
+   * by the language server protocol, characters beyond the end of a line are
+   * clamped to the end of the line, before its line break. Lines beyond the
+   * end of the text are clamped to the end of the text.
+   */
+  public int offsetAt(final int line, final int character) {
+    int lineStart = lineStartOffset(line);
+    int lineEnd = lineStartOffset(line + 1);
+    if (lineEnd > lineStart && charAt(lineEnd - 1) == '\n') {
+      lineEnd -= 1;
+      if (lineEnd > lineStart && charAt(lineEnd - 1) == '\r') {
+        lineEnd -= 1;
+      }
+    }
+    return lineStart + Math.min(Math.max(character, 0), lineEnd - lineStart);
+  }
+
+  private char charAt(final int offset) {
+    int pieceStart = 0;
+    for (Piece p : pieces) {
+      if (offset < pieceStart + p.length) {
+        int idx = p.start + offset - pieceStart;
+        return p.inAdded ? added.charAt(idx) : original.charAt(idx);
+      }
+      pieceStart += p.length;
+    }
+    throw new IndexOutOfBoundsException(offset);
+  }
+
+  private int lineStartOffset(final int line) {
+    if (line <= 0) {
+      return 0;
+    }
+
+    int linesSeen = 0;
+    int offset = 0;
+    for (Piece p : pieces) {
+      if (linesSeen + p.lineBreaks >= line) {
+        int breakIdx = nthBreak(p, line - linesSeen);
+        return offset + (breakIdx - p.start) + 1;
+      }
+      linesSeen += p.lineBreaks;
+      offset += p.length;
+    }
+    return length;
+  }
+
+  /** @return the buffer index of the n-th line break in the piece, n is 1-based */
+  private int nthBreak(final Piece p, final int n) {
+    assert 0 < n && n <= p.lineBreaks;
+    if (p.inAdded) {
+      int seen = 0;
+      for (int i = p.start; i < p.start + p.length; i += 1) {
+        if (added.charAt(i) == '\n') {
+          seen += 1;
+          if (seen == n) {
+            return i;
+          }
+        }
+      }
+      throw new IllegalStateException("Line break count of piece is inconsistent");
+    }
+
+    return originalBreaks[lowerBound(originalBreaks, p.start) + n - 1];
+  }
+
+  /**
+   * Make sure a piece boundary exists at the given offset.
+   *
+   * @return the index of the piece starting at the offset, or the number of
+   *         pieces if the offset is the end of the text
+   */
+  private int split(final int offset) {
+    int pieceStart = 0;
+    for (int i = 0; i < pieces.size(); i += 1) {
+      Piece p = pieces.get(i);
+      if (offset == pieceStart) {
+        return i;
+      }
+
+      int pieceEnd = pieceStart + p.length;
+      if (offset < pieceEnd) {
+        int leftLength = offset - pieceStart;
+        int leftBreaks = countBreaks(p.inAdded, p.start, p.start + leftLength);
+
+        pieces.set(i, new Piece(p.inAdded, p.start, leftLength, leftBreaks));
+        pieces.add(i + 1, new Piece(p.inAdded, p.start + leftLength, p.length - leftLength,
+            p.lineBreaks - leftBreaks));
+        return i + 1;
+      }
+      pieceStart = pieceEnd;
+    }
+
+    assert offset == length;
+    return pieces.size();
+  }
+
+  private int countBreaks(final boolean inAdded, final int start, final int end) {
+    if (inAdded) {
+      return countBreaksInAdded(start, end);
+    }
+    return lowerBound(originalBreaks, end) - lowerBound(originalBreaks, start);
+  }
+
+  private int countBreaksInAdded(final int start, final int end) {
+    int breaks = 0;
+    for (int i = start; i < end; i += 1) {
+      if (added.charAt(i) == '\n') {
+        breaks += 1;
+      }
+    }
+    return breaks;
+  }
+
+  private static int[] findBreaks(final String text) {
+    int[] breaks = new int[16];
+    int num = 0;
+
+    int idx = text.indexOf('\n');
+    while (idx != -1) {
+      if (num == breaks.length) {
+        breaks = Arrays.copyOf(breaks, num * 2);
+      }
+      breaks[num] = idx;
+      num += 1;
+      idx = text.indexOf('\n', idx + 1);
+    }
+
+    return Arrays.copyOf(breaks, num);
+  }
+
+  /** @return index of the first element that is {@code >= key} */
+  private static int lowerBound(final int[] sorted, final int key) {
+    int lo = 0;
+    int hi = sorted.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (sorted[mid] < key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  @Override
+  public String toString() {
+    return "PieceTable(length: " + length + ", pieces: " + pieces.size() + ")";
+  }
+}
@@ -0,0 +1,88 @@
+/******************************************************************************
+ * Copyright (c) 2016 TypeFox and others.
+ * 
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ ******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class ByteBufferReaderTest {
+
+	private static final String MIXED = "aé€😀z{\"k\":\"ü𐀀\"}";
+
+	private static byte[] bytes(int... values) {
+		byte[] result = new byte[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = (byte) values[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Read all characters with reads of at most the given length.
+	 */
+	private static String readAll(ByteBufferReader reader, int readLength) {
+		StringBuilder result = new StringBuilder();
+		char[] chars = new char[readLength + 2];
+		while (true) {
+			// read into the middle of the array, to check that the offset is respected
+			int read = reader.read(chars, 1, readLength);
+			if (read < 0)
+				return result.toString();
+			result.append(chars, 1, read);
+		}
+	}
+
+	private static void assertDecodedLikeString(byte[] input, Charset charset) {
+		String expected = new String(input, charset);
+		ByteBufferReader reader = new ByteBufferReader(charset);
+		for (int readLength = 1; readLength <= 3; readLength++) {
+			reader.reset(ByteBuffer.wrap(input));
+			assertEquals("read length " + readLength, expected, readAll(reader, readLength));
+		}
+		reader.reset(ByteBuffer.wrap(input));
+		assertEquals(expected, readAll(reader, 1024));
+	}
+
+	@Test
+	public void testMixedInput() {
+		assertDecodedLikeString(MIXED.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+		assertDecodedLikeString(MIXED.getBytes(StandardCharsets.UTF_16), StandardCharsets.UTF_16);
+		assertDecodedLikeString(new byte[0], StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testMalformedInput() {
+		// a lone continuation byte, an overlong encoding, and an encoded surrogate
+		assertDecodedLikeString(bytes('a', 0x80, 'b', 0xc0, 0xaf, 'c', 0xed, 0xa0, 0x80, 'd'),
+				StandardCharsets.UTF_8);
+		// a sequence cut off by the end of the input
+		assertDecodedLikeString(bytes('a', 0xf0, 0x9f, 0x98), StandardCharsets.UTF_8);
+		assertDecodedLikeString(bytes('a', 0xe2), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testReadsBetweenPositionAndLimit() {
+		byte[] input = ("[" + MIXED + "]").getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.wrap(input, 1, input.length - 2);
+		ByteBufferReader reader = new ByteBufferReader(StandardCharsets.UTF_8);
+		reader.reset(buffer);
+
+		assertEquals(MIXED, readAll(reader, 2));
+		assertEquals(input.length - 1, buffer.position());
+		assertEquals(input.length - 1, buffer.limit());
+	}
+}
@@ -0,0 +1,94 @@
+/******************************************************************************
+ * Copyright (c) 2016 TypeFox and others.
+ * 
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ ******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MessageBufferTest {
+
+	/** ASCII, two and three byte BMP characters, a surrogate pair, and unpaired surrogates. */
+	private static final String MIXED = "abé€😀c\ud800d\udc00";
+
+	private static String repeat(String s, int count) {
+		StringBuilder result = new StringBuilder(s.length() * count);
+		for (int i = 0; i < count; i++) {
+			result.append(s);
+		}
+		return result.toString();
+	}
+
+	private static byte[] content(MessageBuffer buffer, int start) {
+		return Arrays.copyOfRange(buffer.array(), start, buffer.size());
+	}
+
+	private static void assertEncodedLikeString(String input) {
+		byte[] expected = input.getBytes(StandardCharsets.UTF_8);
+
+		MessageBuffer strings = new MessageBuffer(16);
+		strings.write(input, 0, input.length());
+		strings.flush();
+		assertArrayEquals(expected, content(strings, 0));
+
+		MessageBuffer chars = new MessageBuffer(16);
+		chars.write(input.toCharArray(), 0, input.length());
+		chars.flush();
+		assertArrayEquals(expected, content(chars, 0));
+
+		// the writer may split a surrogate pair across writes
+		MessageBuffer pieces = new MessageBuffer(1);
+		for (int i = 0; i < input.length(); i += 3) {
+			pieces.write(input, i, Math.min(3, input.length() - i));
+		}
+		pieces.flush();
+		assertArrayEquals(expected, content(pieces, 0));
+	}
+
+	@Test
+	public void testMixedInput() {
+		assertEncodedLikeString(MIXED);
+		assertEncodedLikeString("\ud83d");
+		assertEncodedLikeString("\ud83d😀");
+		assertEncodedLikeString("");
+	}
+
+	@Test
+	public void testAsciiAfterOtherCharactersAcrossGrowth() {
+		// non-ASCII characters grow the buffer beyond what was reserved for the whole string
+		assertEncodedLikeString(repeat("€", 3000) + repeat("a", 9000));
+		assertEncodedLikeString(repeat(MIXED, 1000) + repeat("x", 20000));
+		assertEncodedLikeString(repeat("😀a", 5000));
+	}
+
+	@Test
+	public void testResetKeepsRoomForHeader() {
+		MessageBuffer buffer = new MessageBuffer(8);
+		buffer.reset(4);
+		buffer.write(MIXED, 0, MIXED.length());
+		buffer.flush();
+		assertEquals(4 + MIXED.getBytes(StandardCharsets.UTF_8).length, buffer.size());
+		assertArrayEquals(MIXED.getBytes(StandardCharsets.UTF_8), content(buffer, 4));
+
+		int capacity = buffer.capacity();
+		buffer.reset(4);
+		buffer.write("x", 0, 1);
+		assertEquals(5, buffer.size());
+		assertEquals(capacity, buffer.capacity());
+		assertTrue(buffer.capacity() >= buffer.size());
+	}
+}
@@ -0,0 +1,157 @@
+/******************************************************************************
+ * Copyright (c) 2016 TypeFox and others.
+ * 
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ ******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.junit.Test;
+
+import com.google.gson.JsonElement;
+
+public class StreamMessageProducerTest {
+
+	/**
+	 * Returns at most the given number of bytes per read, like a pipe that delivers the input in
+	 * small pieces.
+	 */
+	private static class ChunkedInputStream extends ByteArrayInputStream {
+
+		private final int chunkSize;
+
+		ChunkedInputStream(String input, int chunkSize) {
+			super(input.getBytes(StandardCharsets.UTF_8));
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) {
+			return super.read(b, off, Math.min(len, chunkSize));
+		}
+	}
+
+	private final List<Message> messages = new ArrayList<>();
+	private final List<Throwable> errors = new ArrayList<>();
+
+	private void listen(InputStream input) {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		StreamMessageProducer producer = new StreamMessageProducer(input, jsonHandler) {
+			@Override
+			protected void fireError(Throwable error) {
+				errors.add(error);
+			}
+		};
+		producer.listen(messages::add);
+	}
+
+	private static String notification(String param) {
+		return "{\"jsonrpc\":\"2.0\",\"method\":\"foo\",\"params\":\"" + param + "\"}";
+	}
+
+	private static String message(String content) {
+		int length = content.getBytes(StandardCharsets.UTF_8).length;
+		return "Content-Length: " + length + "\r\n\r\n" + content;
+	}
+
+	private String getParam(int index) {
+		NotificationMessage message = (NotificationMessage) messages.get(index);
+		return ((JsonElement) message.getParams()).getAsString();
+	}
+
+	private static String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	@Test
+	public void testCrlfSplitAcrossReads() {
+		String input = message(notification("first")) + message(notification("sécond"))
+				+ "Content-Type: application/vscode-jsonrpc; charset=utf-8\r\n"
+				+ message(notification("third"));
+		for (int chunkSize = 1; chunkSize <= 7; chunkSize++) {
+			messages.clear();
+			listen(new ChunkedInputStream(input, chunkSize));
+
+			assertEquals("chunk size " + chunkSize, 3, messages.size());
+			assertEquals("first", getParam(0));
+			assertEquals("sécond", getParam(1));
+			assertEquals("third", getParam(2));
+		}
+		assertEquals(0, errors.size());
+	}
+
+	@Test
+	public void testBodyLargerThanBuffer() {
+		String large = repeat('x', 20000) + "ü" + repeat('y', 20000);
+		String input = message(notification("small")) + message(notification(large))
+				+ message(notification("small again"));
+		listen(new ChunkedInputStream(input, 4096));
+
+		assertEquals(3, messages.size());
+		assertEquals("small", getParam(0));
+		assertEquals(large, getParam(1));
+		assertEquals("small again", getParam(2));
+		assertEquals(0, errors.size());
+	}
+
+	@Test
+	public void testBufferGrowsForLongHeaderLines() {
+		String input = "X-Padding: " + repeat('p', 20000) + "\r\n" + message(notification("padded"));
+		listen(new ChunkedInputStream(input, 1000));
+
+		assertEquals(1, messages.size());
+		assertEquals("padded", getParam(0));
+		assertEquals(0, errors.size());
+	}
+
+	@Test
+	public void testEmptyLinesBeforeHeadersAreSkipped() {
+		String input = "\r\n\r\n" + message(notification("first")) + "\n\r\n"
+				+ message(notification("second"));
+		listen(new ChunkedInputStream(input, 3));
+
+		assertEquals(2, messages.size());
+		assertEquals("first", getParam(0));
+		assertEquals("second", getParam(1));
+		assertEquals(0, errors.size());
+	}
+
+	@Test
+	public void testMissingContentLength() {
+		String input = "Content-Type: application/vscode-jsonrpc; charset=utf-8\r\n\r\n";
+		listen(new ChunkedInputStream(input, 5));
+
+		assertEquals(0, messages.size());
+		assertEquals(1, errors.size());
+		assertEquals("Missing header Content-Length in input", errors.get(0).getMessage());
+	}
+
+	@Test
+	public void testIncompleteBodyAtEndOfInput() {
+		String input = message(notification("complete")) + message(notification("cut")).substring(0, 30);
+		listen(new ChunkedInputStream(input, 8));
+
+		assertEquals(1, messages.size());
+		assertEquals("complete", getParam(0));
+		assertEquals(0, errors.size());
+	}
+}
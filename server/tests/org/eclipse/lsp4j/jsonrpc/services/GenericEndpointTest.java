@@ -0,0 +1,179 @@
+/******************************************************************************
+ * Copyright (c) 2016 TypeFox and others.
+ * 
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ ******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.eclipse.lsp4j.jsonrpc.ResponseErrorException;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseError;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
+import org.junit.Test;
+
+public class GenericEndpointTest {
+
+	public static class Foo {
+
+		final List<String> calls = new ArrayList<>();
+
+		static final ResponseErrorException ERROR = new ResponseErrorException(
+				new ResponseError(ResponseErrorCode.InvalidParams, "invalid", null));
+
+		@JsonRequest
+		public CompletableFuture<String> none() {
+			return CompletableFuture.completedFuture("none");
+		}
+
+		@JsonRequest
+		public CompletableFuture<String> one(String a) {
+			return CompletableFuture.completedFuture("one " + a);
+		}
+
+		@JsonRequest
+		public CompletableFuture<String> three(String a, Integer b, String c) {
+			return CompletableFuture.completedFuture("three " + a + " " + b + " " + c);
+		}
+
+		@JsonNotification
+		public void notifyOne(String a) {
+			calls.add(a);
+		}
+
+		@JsonRequest
+		public CompletableFuture<String> failing(String a) {
+			throw ERROR;
+		}
+
+		@JsonRequest
+		public CompletableFuture<String> failingChecked() throws IOException {
+			throw new IOException("checked");
+		}
+
+		@JsonRequest
+		public CompletableFuture<String> failingWithError(String a, String b) {
+			throw new AssertionError("error");
+		}
+	}
+
+	/** Not public, so that the methods are only accessible after they were made accessible. */
+	private static class Hidden {
+
+		@JsonRequest
+		CompletableFuture<String> hidden(String a) {
+			return CompletableFuture.completedFuture("hidden " + a);
+		}
+	}
+
+	private final Foo foo = new Foo();
+	private final GenericEndpoint endpoint = new GenericEndpoint(foo);
+
+	private Object request(String method, Object parameter) throws Exception {
+		return endpoint.request(method, parameter).get();
+	}
+
+	@Test
+	public void testNoParameter() throws Exception {
+		assertEquals("none", request("none", null));
+		// unexpected params are ignored
+		assertEquals("none", request("none", "ignored"));
+		assertEquals("none", request("none", Arrays.asList("ignored")));
+	}
+
+	@Test
+	public void testSingleParameter() throws Exception {
+		assertEquals("one a", request("one", "a"));
+		assertEquals("one null", request("one", null));
+
+		// a list of params is spread over the parameters
+		assertEquals("one a", request("one", Arrays.asList("a")));
+		assertEquals("one a", request("one", Arrays.asList("a", "ignored")));
+		assertEquals("one null", request("one", Arrays.asList()));
+
+		endpoint.notify("notifyOne", "n1");
+		endpoint.notify("notifyOne", Arrays.asList("n2"));
+		assertEquals(Arrays.asList("n1", "n2"), foo.calls);
+	}
+
+	@Test
+	public void testMultipleParameters() throws Exception {
+		assertEquals("three a 1 c", request("three", Arrays.asList("a", 1, "c")));
+		assertEquals("three a 1 null", request("three", Arrays.asList("a", 1)));
+		assertEquals("three a 1 c", request("three", Arrays.asList("a", 1, "c", "ignored")));
+		assertEquals("three a null null", request("three", "a"));
+	}
+
+	@Test
+	public void testMethodsOfNonPublicClass() throws Exception {
+		GenericEndpoint hidden = new GenericEndpoint(new Hidden());
+		assertEquals("hidden a", hidden.request("hidden", "a").get());
+		assertEquals("hidden b", hidden.request("hidden", Arrays.asList("b")).get());
+	}
+
+	@Test
+	public void testRuntimeExceptionsArePassedOnUnwrapped() {
+		try {
+			endpoint.request("failing", "a");
+			fail("Expected an exception");
+		} catch (ResponseErrorException e) {
+			assertSame(Foo.ERROR, e);
+		}
+
+		try {
+			endpoint.request("failing", Arrays.asList("a"));
+			fail("Expected an exception");
+		} catch (ResponseErrorException e) {
+			assertSame(Foo.ERROR, e);
+		}
+	}
+
+	@Test
+	public void testCheckedExceptionsAndErrorsAreWrapped() {
+		try {
+			endpoint.request("failingChecked", null);
+			fail("Expected an exception");
+		} catch (RuntimeException e) {
+			assertTrue(e.getCause() instanceof InvocationTargetException);
+			assertTrue(e.getCause().getCause() instanceof IOException);
+		}
+
+		try {
+			endpoint.request("failingWithError", Arrays.asList("a", "b"));
+			fail("Expected an exception");
+		} catch (RuntimeException e) {
+			assertTrue(e.getCause() instanceof InvocationTargetException);
+			assertTrue(e.getCause().getCause() instanceof AssertionError);
+		}
+	}
+
+	@Test
+	public void testUnsupportedMethods() throws Exception {
+		try {
+			request("unknown", null);
+			fail("Expected an exception");
+		} catch (ExecutionException e) {
+			ResponseErrorException error = (ResponseErrorException) e.getCause();
+			assertEquals(ResponseErrorCode.MethodNotFound.getValue(), error.getResponseError().getCode());
+		}
+		assertNull(request("$/optional", null));
+	}
+}
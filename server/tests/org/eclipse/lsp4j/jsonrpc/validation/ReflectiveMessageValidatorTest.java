@@ -0,0 +1,172 @@
+/******************************************************************************
+ * Copyright (c) 2016 TypeFox and others.
+ * 
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0,
+ * or the Eclipse Distribution License v. 1.0 which is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR BSD-3-Clause
+ ******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.lsp4j.jsonrpc.MessageIssueException;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.validation.ReflectiveMessageValidator.Mode;
+import org.junit.Test;
+
+public class ReflectiveMessageValidatorTest {
+
+	/**
+	 * Nodes with the same name are equal, independent of their children.
+	 */
+	public static class Node {
+
+		private final String name;
+		private Node child;
+
+		public Node(String name, Node child) {
+			this.name = name;
+			this.child = child;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Node getChild() {
+			return child;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Node && ((Node) obj).name.equals(name);
+		}
+
+		@Override
+		public int hashCode() {
+			return name.hashCode();
+		}
+	}
+
+	private final List<Message> forwarded = new ArrayList<>();
+
+	private static NotificationMessage validMessage() {
+		NotificationMessage message = new NotificationMessage();
+		message.setJsonrpc("2.0");
+		message.setMethod("foo");
+		return message;
+	}
+
+	private static NotificationMessage invalidMessage() {
+		NotificationMessage message = new NotificationMessage();
+		message.setJsonrpc("2.0");
+		return message;
+	}
+
+	/**
+	 * @return the number of messages that were rejected
+	 */
+	private int consumeAll(ReflectiveMessageValidator validator, int count, Message message) {
+		int rejected = 0;
+		for (int i = 0; i < count; i++) {
+			try {
+				validator.consume(message);
+			} catch (MessageIssueException e) {
+				rejected++;
+			}
+		}
+		return rejected;
+	}
+
+	@Test
+	public void testFullValidatesEveryMessage() {
+		ReflectiveMessageValidator validator = new ReflectiveMessageValidator(forwarded::add);
+		assertEquals(Mode.FULL, validator.getMode());
+
+		try {
+			validator.consume(invalidMessage());
+			fail("Expected an issue");
+		} catch (MessageIssueException e) {
+			assertEquals("The accessor 'NotificationMessage.getMethod()' must return a non-null value. Path: $.method",
+					e.getIssues().get(0).getText());
+		}
+		assertEquals(4, consumeAll(validator, 4, invalidMessage()));
+		assertEquals(0, forwarded.size());
+
+		assertEquals(0, consumeAll(validator, 3, validMessage()));
+		assertEquals(3, forwarded.size());
+	}
+
+	@Test
+	public void testOffForwardsWithoutValidating() {
+		ReflectiveMessageValidator validator = new ReflectiveMessageValidator(forwarded::add, Mode.OFF,
+				ReflectiveMessageValidator.DEFAULT_SAMPLE_INTERVAL);
+
+		assertEquals(0, consumeAll(validator, 5, invalidMessage()));
+		assertEquals(5, forwarded.size());
+	}
+
+	@Test
+	public void testSampledValidatesOneInAnInterval() {
+		ReflectiveMessageValidator validator = new ReflectiveMessageValidator(forwarded::add, Mode.SAMPLED, 3);
+
+		// the first message of each interval is validated
+		assertEquals(3, consumeAll(validator, 7, invalidMessage()));
+		assertEquals(4, forwarded.size());
+	}
+
+	@Test
+	public void testInvalidSampleInterval() {
+		try {
+			new ReflectiveMessageValidator(forwarded::add, Mode.SAMPLED, 0);
+			fail("Expected an exception");
+		} catch (IllegalArgumentException e) {
+			assertEquals("The sample interval must be positive: 0", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSelfReferenceIsAnIssue() {
+		Node node = new Node("node", null);
+		node.child = new Node("child", node);
+
+		NotificationMessage message = validMessage();
+		message.setParams(node);
+		try {
+			new ReflectiveMessageValidator(forwarded::add).consume(message);
+			fail("Expected an issue");
+		} catch (MessageIssueException e) {
+			assertEquals("An element of the message has a direct or indirect reference to itself."
+					+ " Path: $.params.child.child", e.getIssues().get(0).getText());
+		}
+	}
+
+	@Test
+	public void testEqualNestedObjectsAreNoSelfReference() {
+		Node outer = new Node("same", new Node("same", new Node("same", null)));
+		ReflectiveMessageValidator validator = new ReflectiveMessageValidator();
+		assertTrue(validator.isValid(outer));
+
+		// the same object may also appear more than once, as long as it does not contain itself
+		Node shared = new Node("shared", null);
+		List<Node> list = new ArrayList<>();
+		list.add(shared);
+		list.add(shared);
+		assertTrue(validator.isValid(list));
+
+		List<Object> containsItself = new ArrayList<>();
+		containsItself.add(containsItself);
+		assertFalse(validator.isValid(containsItself));
+	}
+}
@@ -0,0 +1,110 @@
+package som.langserv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.Diagnostic;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.Range;
+import org.junit.Test;
+
+
+public class DiagnosticsPublisherTests {
+
+  /** Records all publications, including the ones clearing diagnostics. */
+  private static final class RecordingClient extends TestLanguageClient {
+    private final BlockingQueue<PublishDiagnosticsParams> published =
+        new LinkedBlockingQueue<>();
+
+    @Override
+    public void publishDiagnostics(final PublishDiagnosticsParams diagnostics) {
+      published.add(diagnostics);
+    }
+
+    PublishDiagnosticsParams next() throws InterruptedException {
+      PublishDiagnosticsParams p = published.poll(10, TimeUnit.SECONDS);
+      assertNotNull("Expected a publication", p);
+      return p;
+    }
+  }
+
+  private static Diagnostic warning(final int line) {
+    return new Diagnostic(new Range(new Position(line, 0), new Position(line, 4)), "w");
+  }
+
+  @Test
+  public void testOnlyChangedDiagnosticsArePublished() {
+    var client = new RecordingClient();
+    var publisher = new DiagnosticsPublisher(client);
+    String uri = "file:/Main.sl";
+
+    publisher.publish(uri, List.of(warning(0)));
+    publisher.publish(uri, List.of(warning(0)));
+    assertEquals(1, client.published.size());
+
+    publisher.publish(uri, List.of(warning(0), warning(1)));
+    assertEquals(2, client.published.size());
+
+    // clearing waits for the next tick, and is dropped when the old state returns
+    publisher.publish(uri, null);
+    publisher.publish(uri, List.of(warning(0), warning(1)));
+    assertEquals(2, client.published.size());
+
+    // documents without diagnostics are not published at all
+    publisher.publish("file:/Clean.sl", List.of());
+    assertEquals(2, client.published.size());
+  }
+
+  @Test
+  public void testClearedDiagnosticsArePublishedOnTheNextTick()
+      throws InterruptedException {
+    var client = new RecordingClient();
+    var publisher = new DiagnosticsPublisher(client);
+    String uri = "file:/Main.sl";
+
+    publisher.publish(uri, List.of(warning(0)));
+    assertEquals(1, client.next().getDiagnostics().size());
+
+    publisher.publish(uri, null);
+    assertNull(client.published.poll());
+
+    PublishDiagnosticsParams cleared = client.next();
+    assertEquals(uri, cleared.getUri());
+    assertEquals(0, cleared.getDiagnostics().size());
+  }
+
+  @Test
+  public void testPublicationsBeyondTheRateWaitForTheTick()
+      throws InterruptedException {
+    var client = new RecordingClient();
+    var publisher = new DiagnosticsPublisher(client, 2);
+
+    // a burst up to the rate is sent right away
+    publisher.publish("file:/A.sl", List.of(warning(0)));
+    publisher.publish("file:/B.sl", List.of(warning(0)));
+    assertEquals(2, client.published.size());
+    client.published.clear();
+
+    // further publications wait, and only the latest of a document is sent
+    publisher.publish("file:/C.sl", List.of(warning(0)));
+    publisher.publish("file:/D.sl", List.of(warning(0)));
+    publisher.publish("file:/C.sl", List.of(warning(0), warning(1)));
+    assertNull(client.published.poll());
+
+    PublishDiagnosticsParams first = client.next();
+    assertEquals("file:/D.sl", first.getUri());
+
+    PublishDiagnosticsParams second = client.next();
+    assertEquals("file:/C.sl", second.getUri());
+    assertEquals(2, second.getDiagnostics().size());
+
+    assertNull(client.published.poll(600, TimeUnit.MILLISECONDS));
+  }
+}
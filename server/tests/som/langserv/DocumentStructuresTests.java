@@ -0,0 +1,299 @@
+package som.langserv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.lsp4j.DocumentSymbol;
+import org.eclipse.lsp4j.LocationLink;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SymbolKind;
+import org.junit.Test;
+
+import som.langserv.lint.LintUseNeedsDefine;
+import som.langserv.simple.PropertyId;
+import som.langserv.structure.CompletionCollector;
+import som.langserv.structure.DefinitionIndex;
+import som.langserv.structure.DocumentStructures;
+import som.langserv.structure.FuzzyMatcher;
+import som.langserv.structure.IdInterner;
+import som.langserv.structure.LanguageElement;
+import som.langserv.structure.LanguageElementId;
+import som.langserv.structure.Pair;
+import som.langserv.structure.ReferenceIndex;
+
+
+public class DocumentStructuresTests {
+
+  private static Range range(final int startLine, final int startChar, final int endLine,
+      final int endChar) {
+    return new Range(new Position(startLine, startChar), new Position(endLine, endChar));
+  }
+
+  private static String nameAt(final DocumentStructures doc, final int line, final int col) {
+    var element = doc.getElement(new Position(line, col));
+    return element == null ? null : element.v1.getName();
+  }
+
+  @Test
+  public void testInnermostElementOrReference() {
+    DocumentStructures doc = new DocumentStructures("file:/test.sl", "file:/test.sl");
+
+    LanguageElement outer = doc.startSymbol("outer", SymbolKind.Function,
+        new PropertyId("outer"), range(0, 9, 0, 14), true);
+    doc.referenceSymbol(new PropertyId("ref1"), range(1, 2, 1, 6));
+    doc.recordDefinition("inner", new PropertyId("inner"), SymbolKind.Variable,
+        range(2, 2, 2, 7));
+    doc.referenceSymbol(new PropertyId("ref2"), range(3, 2, 3, 6));
+    doc.completeSymbol(outer, range(0, 0, 4, 1));
+
+    LanguageElement second = doc.startSymbol("second", SymbolKind.Function,
+        new PropertyId("second"), range(6, 9, 6, 15), true);
+    doc.completeSymbol(second, range(6, 0, 7, 1));
+
+    assertEquals("outer", nameAt(doc, 0, 0));
+    assertEquals("ref1", nameAt(doc, 1, 2));
+    assertEquals("ref1", nameAt(doc, 1, 6));
+    assertEquals("outer", nameAt(doc, 1, 7));
+    assertEquals("inner", nameAt(doc, 2, 4));
+    assertEquals("ref2", nameAt(doc, 3, 3));
+    assertEquals("outer", nameAt(doc, 4, 1));
+    assertNull(nameAt(doc, 5, 0));
+    assertEquals("second", nameAt(doc, 7, 0));
+    assertNull(nameAt(doc, 8, 0));
+  }
+
+  @Test
+  public void testOverlappingSiblingsKeepTheirOrder() {
+    DocumentStructures doc = new DocumentStructures("file:/test.sl", "file:/test.sl");
+
+    doc.recordDefinition("late", new PropertyId("late"), SymbolKind.Variable,
+        range(1, 4, 1, 10));
+    doc.recordDefinition("early", new PropertyId("early"), SymbolKind.Variable,
+        range(1, 0, 1, 8));
+    doc.recordDefinition("unrelated", new PropertyId("unrelated"), SymbolKind.Variable,
+        range(3, 0, 3, 8));
+
+    // both contain the position, so the first recorded one is found
+    assertEquals("late", nameAt(doc, 1, 5));
+    assertEquals("early", nameAt(doc, 1, 2));
+    assertEquals("late", nameAt(doc, 1, 9));
+    assertEquals("unrelated", nameAt(doc, 3, 3));
+  }
+
+  private static DocumentStructures defining(final String uri, final String name) {
+    DocumentStructures doc = new DocumentStructures(uri, uri);
+    doc.recordDefinition(name, new PropertyId(name), SymbolKind.Variable, range(0, 0, 0, 5));
+    return doc;
+  }
+
+  private static int numDiagnostics(final DocumentStructures doc) {
+    return doc.getDiagnostics() == null ? 0 : doc.getDiagnostics().size();
+  }
+
+  @Test
+  public void testElementsCreateDocumentSymbolsOnRequest() {
+    DocumentStructures doc = new DocumentStructures("file:/test.sl", "file:/test.sl");
+
+    LanguageElement outer = doc.startSymbol("outer", SymbolKind.Function,
+        new PropertyId("outer"), range(0, 9, 0, 14), true);
+    doc.recordDefinition("listed", new PropertyId("listed"), SymbolKind.Variable,
+        range(1, 2, 1, 8), false, true);
+    doc.recordDefinition("local", new PropertyId("local"), SymbolKind.Variable,
+        range(2, 2, 2, 7));
+    doc.completeSymbol(outer, range(0, 0, 3, 1));
+
+    assertEquals(range(0, 0, 3, 1), outer.getRange());
+    assertEquals(range(0, 9, 0, 14), outer.getSelectionRange());
+    assertEquals(2, outer.getAllChildren().size());
+
+    DocumentSymbol symbol = outer.createDocumentSymbol();
+    assertEquals("outer", symbol.getName());
+    assertEquals(range(0, 0, 3, 1), symbol.getRange());
+    assertEquals(1, symbol.getChildren().size());
+    assertEquals("listed", symbol.getChildren().get(0).getName());
+    assertNull(symbol.getChildren().get(0).getChildren());
+  }
+
+  @Test
+  public void testUseNeedsDefineOnlyRechecksAffectedDocuments() {
+    var lint = new LintUseNeedsDefine();
+
+    DocumentStructures user = new DocumentStructures("file:/user.sl", "file:/user.sl");
+    user.referenceSymbol(new PropertyId("helper"), range(1, 2, 1, 8));
+    user.referenceSymbol(new PropertyId("helper"), range(2, 2, 2, 8));
+    user.referenceSymbol(new PropertyId("other"), range(3, 2, 3, 7));
+
+    assertTrue(lint.lint(List.of(user)).isEmpty());
+    assertEquals(3, numDiagnostics(user));
+
+    // defining helper removes its warnings from the referencing document
+    var affected = lint.lint(List.of(defining("file:/helper.sl", "helper")));
+    assertEquals(1, affected.size());
+    assertSame(user, affected.iterator().next());
+    assertEquals(1, numDiagnostics(user));
+
+    // a definition nobody refers to does not affect other documents
+    assertTrue(lint.lint(List.of(defining("file:/unused.sl", "unused"))).isEmpty());
+
+    // linting the same structures again does not duplicate warnings
+    assertTrue(lint.lint(List.of(user)).isEmpty());
+    assertEquals(1, numDiagnostics(user));
+
+    // a second definition is counted, removing one keeps helper defined
+    lint.lint(List.of(defining("file:/helper2.sl", "helper")));
+    assertTrue(lint.lint(List.of(defining("file:/helper.sl", "renamed"))).isEmpty());
+    assertEquals(1, numDiagnostics(user));
+
+    // removing the last definition brings the warnings back
+    affected = lint.remove("file:/helper2.sl");
+    assertEquals(1, affected.size());
+    assertEquals(3, numDiagnostics(user));
+  }
+
+  @Test
+  public void testReferenceIndexFindsOnlyUsingDocuments() {
+    var index = new ReferenceIndex();
+
+    DocumentStructures user = new DocumentStructures("file:/user.sl", "file:/user.sl");
+    user.referenceSymbol(new PropertyId("helper"), range(1, 2, 1, 8));
+    index.update("file:/user.sl", user);
+    index.update("file:/helper.sl", defining("file:/helper.sl", "helper"));
+    index.update("file:/unused.sl", defining("file:/unused.sl", "unused"));
+
+    var docs = index.getDocuments(new PropertyId("helper"));
+    assertEquals(2, docs.size());
+    assertSame(user, docs.get(0));
+    assertEquals("file:/helper.sl", docs.get(1).getUri());
+
+    // a replaced document keeps its position, but only its current ids
+    DocumentStructures renamed = defining("file:/user.sl", "other");
+    index.update("file:/user.sl", renamed);
+    assertEquals(1, index.getDocuments(new PropertyId("helper")).size());
+    assertSame(renamed, index.getDocuments(new PropertyId("other")).get(0));
+
+    index.remove("file:/helper.sl");
+    assertTrue(index.getDocuments(new PropertyId("helper")).isEmpty());
+  }
+
+  @Test
+  public void testDefinitionIndexPrefersCurrentDocument() {
+    var index = new DefinitionIndex();
+    index.update("/a.sl", defining("file:/a.sl", "helper"));
+    index.update("/b.sl", defining("file:/b.sl", "helper"));
+    index.update("/c.sl", defining("file:/c.sl", "other"));
+
+    var element = new Pair<LanguageElementId, Range>(new PropertyId("helper"),
+        range(3, 2, 3, 8));
+    List<LocationLink> links = new ArrayList<>();
+    index.lookup(element, "/b.sl", links);
+
+    assertEquals(2, links.size());
+    assertEquals("file:/b.sl", links.get(0).getTargetUri());
+    assertEquals("file:/a.sl", links.get(1).getTargetUri());
+    assertEquals(3, links.get(0).getOriginSelectionRange().getStart().getLine());
+
+    index.update("/a.sl", defining("file:/a.sl", "renamed"));
+    index.remove("/b.sl");
+    links.clear();
+    index.lookup(element, "/b.sl", links);
+    assertTrue(links.isEmpty());
+  }
+
+  @Test
+  public void testInternedIdsAreSharedUntilUnused() {
+    var interner = new IdInterner<String, PropertyId>(PropertyId::new);
+    PropertyId kept = interner.intern("kept");
+    assertSame(kept, interner.intern("kept"));
+    assertSame(kept, interner.intern(new String("kept")));
+
+    interner.intern("unused");
+    assertEquals(2, interner.size());
+
+    // the entry of an unused id is removed on a lookup after it was collected
+    for (int i = 0; i < 100 && interner.size() > 1; i += 1) {
+      System.gc();
+      assertSame(kept, interner.intern("kept"));
+    }
+    assertEquals(1, interner.size());
+  }
+
+  @Test
+  public void testFuzzyMatching() {
+    assertTrue(FuzzyMatcher.score("printLine", "pL") > FuzzyMatcher.NO_MATCH);
+    assertTrue(FuzzyMatcher.score("at:put:", "ap") > FuzzyMatcher.NO_MATCH);
+    assertTrue(FuzzyMatcher.score("printLine", "pte") > FuzzyMatcher.NO_MATCH);
+    assertEquals(FuzzyMatcher.NO_MATCH, FuzzyMatcher.score("main", "i"));
+    assertEquals(FuzzyMatcher.NO_MATCH, FuzzyMatcher.score("printLine", "pz"));
+
+    assertTrue(
+        FuzzyMatcher.score("print", "print") > FuzzyMatcher.score("printLine", "print"));
+    assertTrue(FuzzyMatcher.score("printLine", "pri") > FuzzyMatcher.score("printLine", "pL"));
+    assertTrue(FuzzyMatcher.score("printLine", "pL") > FuzzyMatcher.score("printLine", "pn"));
+  }
+
+  private static LanguageElement element(final String name) {
+    return new LanguageElement(name, SymbolKind.Function, new PropertyId(name),
+        range(0, 0, 0, 1), true);
+  }
+
+  @Test
+  public void testCompletionsAreRankedAndLimited() {
+    var collector = new CompletionCollector("pL", 2);
+    collector.offer(element("parseList"));
+    collector.offer(element("other"));
+    collector.offer(element("printLine"));
+    collector.offer(element("plus"));
+    collector.offer(element("pLot"));
+
+    assertTrue(collector.isIncomplete());
+
+    var items = collector.createItems();
+    assertEquals(2, items.size());
+    assertEquals("pLot", items.get(0).getLabel());
+    assertEquals("plus", items.get(1).getLabel());
+    assertTrue(items.get(0).getSortText().compareTo(items.get(1).getSortText()) < 0);
+
+    // ties keep the order in which the candidates were offered
+    collector = new CompletionCollector("pL", 10);
+    collector.offer(element("printLine"));
+    collector.offer(element("parseList"));
+    collector.offer(element("printLine"));
+
+    assertFalse(collector.isIncomplete());
+    items = collector.createItems();
+    assertEquals(2, items.size());
+    assertEquals("printLine", items.get(0).getLabel());
+    assertEquals("parseList", items.get(1).getLabel());
+  }
+
+  @Test
+  public void testHashAgreesWithEqualsForElementsCompletedLater() {
+    var early = new LanguageElement(SymbolKind.Class, true);
+    early.setName("Foo");
+    early.hashCode();
+    early.setRange(range(0, 0, 2, 1));
+
+    // like the Newspeak class side, the identifier range is set after lookup
+    Set<LanguageElement> similar = new HashSet<>();
+    similar.add(early);
+    early.setSelectionRange(range(0, 6, 0, 9));
+    assertTrue(similar.contains(early));
+
+    var complete = new LanguageElement(SymbolKind.Class, true);
+    complete.setName("Foo");
+    complete.setRange(range(0, 0, 2, 1));
+    complete.setSelectionRange(range(0, 6, 0, 9));
+
+    assertEquals(complete, early);
+    assertEquals(complete.hashCode(), early.hashCode());
+  }
+}
@@ -43,13 +43,14 @@ public class NewspeakTests {
   }
 
   @Test
-  public void testLoadingNewspeakWorkspace() throws URISyntaxException, InterruptedException {
+  public void testLoadingNewspeakWorkspace() {
     var adapter = new NewspeakAdapter();
     var client = new TestLanguageClient();
 
-    adapter.connect(client);
-    Thread thread = (Thread) adapter.loadWorkspace("file:" + NewspeakAdapter.CORE_LIB_PATH);
-    thread.join();
+    // the diagnostics of the whole core library are counted right away
+    adapter.connect(client, new DiagnosticsPublisher(client, Integer.MAX_VALUE));
+    new WorkspaceIndexer(new LanguageAdapter[] {adapter})
+        .index(List.of(new File(NewspeakAdapter.CORE_LIB_PATH))).join();
 
     int warnings = 0;
     int errors = 0;
@@ -79,6 +80,26 @@ public class NewspeakTests {
     assertEquals(0, others);
   }
 
+  @Test
+  public void testVmMirrorPrimitivesAreDefinedWithoutIndexing()
+      throws URISyntaxException {
+    var adapter = new NewspeakAdapter();
+    String path = "file:" + NewspeakAdapter.CORE_LIB_PATH + "/Hello.ns";
+    var structures = adapter.parse("class Hello usingPlatform: platform = Value ()(\n"
+        + "  public main: args = (\n"
+        + "    vmMirror printString: 'Hello'\n"
+        + "  )\n"
+        + ") )\n", path);
+    adapter.lintDocuments(List.of(structures));
+
+    List<Diagnostic> diagnostics = structures.getDiagnostics();
+    if (diagnostics != null) {
+      for (Diagnostic d : diagnostics) {
+        assertFalse(d.getMessage(), d.getMessage().startsWith("`printString:`"));
+      }
+    }
+  }
+
   @Test
   public void testSemanticHighlightingInSmallExample() throws URISyntaxException {
     var adapter = new NewspeakAdapter();
@@ -0,0 +1,57 @@
+package som.langserv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class RequestExecutorTests {
+
+  private final RequestExecutor requests = new RequestExecutor();
+
+  @After
+  public void shutdown() {
+    requests.shutdown();
+  }
+
+  @Test
+  public void testRequestsAreCancelledWhenSuperseded() throws Exception {
+    var parsed = new CompletableFuture<Void>();
+
+    var first = requests.supersede("completion",
+        requests.computeAfter(parsed, cancelChecker -> "first"));
+    var second = requests.supersede("completion",
+        requests.computeAfter(parsed, cancelChecker -> "second"));
+    assertTrue(first.isCancelled());
+
+    parsed.complete(null);
+    assertEquals("second", second.get());
+  }
+
+  @Test
+  public void testRunningRequestStopsAtNextCheck() throws InterruptedException {
+    var started = new CountDownLatch(1);
+    var stopped = new CountDownLatch(1);
+    var running = requests.compute(cancelChecker -> {
+      started.countDown();
+      try {
+        while (true) {
+          cancelChecker.checkCanceled();
+          Thread.onSpinWait();
+        }
+      } finally {
+        stopped.countDown();
+      }
+    });
+
+    started.await();
+    running.cancel(false);
+    assertTrue(stopped.await(10, TimeUnit.SECONDS));
+  }
+}
@@ -1,15 +1,24 @@
 package som.langserv;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.SemanticTokensEdit;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
 import org.junit.Test;
 
+import som.langserv.structure.SemanticTokenType;
 import som.langserv.structure.SemanticTokens;
+import util.PackedIntList;
 
 
 public class SemanticTokensTest {
@@ -154,6 +163,129 @@ public class SemanticTokensTest {
     assertListsEqual(expected, filtered);
   }
 
+  @Test
+  public void testComputeEditForInsertedToken() {
+    PackedIntList previous = new PackedIntList(new int[] {
+        2, 5, 3, 0, 3,
+        3, 2, 7, 2, 0});
+    PackedIntList current = new PackedIntList(new int[] {
+        2, 5, 3, 0, 3,
+        0, 5, 4, 1, 0,
+        3, 2, 7, 2, 0});
+
+    SemanticTokensEdit edit = SemanticTokens.computeEdit(previous, current);
+    applyAndAssert(previous, current, edit);
+    assertEquals(5, edit.getStart());
+    assertEquals(0, edit.getDeleteCount());
+    assertEquals(Arrays.asList(0, 5, 4, 1, 0), edit.getData());
+  }
+
+  @Test
+  public void testComputeEditForRemovedAndIdenticalTokens() {
+    PackedIntList previous = new PackedIntList(new int[] {
+        2, 5, 3, 0, 3,
+        0, 5, 4, 1, 0,
+        3, 2, 7, 2, 0});
+    PackedIntList current = new PackedIntList(new int[] {
+        2, 5, 3, 0, 3,
+        3, 2, 7, 2, 0});
+
+    applyAndAssert(previous, current, SemanticTokens.computeEdit(previous, current));
+    assertNull(SemanticTokens.computeEdit(current, current));
+    applyAndAssert(current, new ArrayList<>(),
+        SemanticTokens.computeEdit(current, PackedIntList.empty()));
+  }
+
+  @Test
+  public void testSelectLines() {
+    List<int[]> tokens = new ArrayList<>();
+    tokens.add(new int[] {1, 1, 1, 0, 0});
+    tokens.add(new int[] {2, 1, 1, 1, 0});
+    tokens.add(new int[] {2, 10, 1, 1, 0});
+    tokens.add(new int[] {4, 1, 1, 2, 0});
+    tokens.add(new int[] {7, 1, 1, 2, 0});
+
+    List<int[]> expected = new ArrayList<>();
+    expected.add(new int[] {2, 1, 1, 1, 0});
+    expected.add(new int[] {2, 10, 1, 1, 0});
+    expected.add(new int[] {4, 1, 1, 2, 0});
+
+    PackedIntList packed = SemanticTokens.pack(tokens);
+    assertListsEqual(expected, SemanticTokens.unpack(SemanticTokens.selectLines(packed, 2, 5)));
+    assertEquals(packed, SemanticTokens.selectLines(packed, 0, 100));
+    assertEquals(0, SemanticTokens.selectLines(packed, 5, 6).size());
+    assertEquals(0, SemanticTokens.selectLines(packed, 8, 10).size());
+  }
+
+  @Test
+  public void testPackedTokensAreSortedStably() {
+    SemanticTokens tokens = new SemanticTokens();
+    tokens.addSemanticToken(3, 1, 4, SemanticTokenType.KEYWORD);
+    tokens.addSemanticToken(1, 7, 2, SemanticTokenType.VARIABLE);
+    tokens.addSemanticToken(1, 2, 5, SemanticTokenType.METHOD);
+    tokens.addSemanticToken(3, 1, 6, SemanticTokenType.STRING);
+
+    List<int[]> expected = new ArrayList<>();
+    expected.add(new int[] {1, 2, 5, SemanticTokenType.METHOD.ordinal(), 0});
+    expected.add(new int[] {1, 7, 2, SemanticTokenType.VARIABLE.ordinal(), 0});
+    expected.add(new int[] {3, 1, 4, SemanticTokenType.KEYWORD.ordinal(), 0});
+    expected.add(new int[] {3, 1, 6, SemanticTokenType.STRING.ordinal(), 0});
+
+    assertListsEqual(expected, tokens.getSemanticTokens());
+    assertEquals(Arrays.asList(1, 2, 5, SemanticTokenType.METHOD.ordinal(), 0),
+        tokens.getPackedTokens().subList(0, SemanticTokens.TOKEN_SIZE));
+  }
+
+  @Test
+  public void testPackedTokensAreSnapshotsUntilFrozen() {
+    SemanticTokens tokens = new SemanticTokens();
+    tokens.addSemanticToken(3, 1, 4, SemanticTokenType.KEYWORD);
+    PackedIntList before = tokens.getPackedTokens();
+
+    tokens.addSemanticToken(1, 2, 5, SemanticTokenType.METHOD);
+    tokens.getPackedTokens();
+    assertEquals(Arrays.asList(3, 1, 4, SemanticTokenType.KEYWORD.ordinal(), 0), before);
+
+    tokens.freeze();
+    assertEquals(2 * SemanticTokens.TOKEN_SIZE, tokens.getPackedTokens().size());
+  }
+
+  @Test
+  public void testPackedTokensAreSerializedByTheServerGson() {
+    var handler = new MessageJsonHandler(Map.of(), ServerLauncher::configureGson);
+    var adapter = handler.getGson().getAdapter(PackedIntList.class);
+    assertTrue(adapter instanceof PackedIntList.GsonAdapter);
+
+    var response = new ResponseMessage();
+    response.setId("1");
+    response.setResult(new org.eclipse.lsp4j.SemanticTokens("r1",
+        new PackedIntList(new int[] {9, 2, 5, 3, 0, 3, 9}, 1, 5)));
+
+    assertEquals("{\"jsonrpc\":\"2.0\",\"id\":\"1\","
+        + "\"result\":{\"resultId\":\"r1\",\"data\":[2,5,3,0,3]}}",
+        handler.serialize(response));
+  }
+
+  @Test
+  public void testPackedTokensAreWrittenAsJsonArray() throws IOException {
+    PackedIntList tokens = new PackedIntList(new int[] {9, 1, 2, 3, 4, 5, 9}, 1, 5);
+    PackedIntList.GsonAdapter adapter = new PackedIntList.GsonAdapter();
+
+    String json = adapter.toJson(tokens);
+    assertEquals("[1,2,3,4,5]", json);
+    assertEquals(tokens, adapter.fromJson(json));
+  }
+
+  private static void applyAndAssert(final List<Integer> previous,
+      final List<Integer> expected, final SemanticTokensEdit edit) {
+    List<Integer> result = new ArrayList<>(previous);
+    List<Integer> replaced =
+        result.subList(edit.getStart(), edit.getStart() + edit.getDeleteCount());
+    replaced.clear();
+    replaced.addAll(edit.getData());
+    assertEquals(expected, result);
+  }
+
   void assertListsEqual(final List<int[]> expected, final List<int[]> actual) {
     assertEquals(expected.size(), actual.size());
 
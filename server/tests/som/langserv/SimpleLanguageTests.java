@@ -4,16 +4,26 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static som.langserv.Helpers.assertRange;
 import static som.langserv.Helpers.assertToken;
 import static som.langserv.Helpers.printAllToken;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import org.eclipse.lsp4j.CompletionItemKind;
 import org.eclipse.lsp4j.CompletionList;
+import org.eclipse.lsp4j.Diagnostic;
 import org.eclipse.lsp4j.DocumentHighlight;
 import org.eclipse.lsp4j.DocumentSymbol;
 import org.eclipse.lsp4j.Hover;
@@ -22,16 +32,24 @@ import org.eclipse.lsp4j.Position;
 import org.eclipse.lsp4j.Range;
 import org.eclipse.lsp4j.SignatureHelp;
 import org.eclipse.lsp4j.SymbolInformation;
+import org.eclipse.lsp4j.SymbolKind;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import simple.SimpleLanguageParser;
 import som.langserv.simple.SimpleAdapter;
+import som.langserv.structure.DocumentStructures;
+import som.langserv.structure.LanguageElementId;
 import som.langserv.structure.SemanticTokenType;
 import util.ArrayListIgnoreIfLastIdentical;
 
 
 public class SimpleLanguageTests {
 
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
   public static File getRootForSimpleLanguageExamples() throws URISyntaxException {
     File f = new File(
         SimpleLanguageParser.class.getProtectionDomain().getCodeSource()
@@ -331,6 +349,36 @@ public class SimpleLanguageTests {
     assertEquals(2, results.size());
   }
 
+  @Test
+  public void testWorkspaceSymbolsAreRankedAndLimited() throws URISyntaxException {
+    var adapter = new SimpleAdapter();
+    String path = "file:" + getRootForSimpleLanguageExamples() + File.separator + "Test.sl";
+    adapter.parse("function loopForever() {}\n"
+        + "function LOOP() {}\n"
+        + "function loopy() {}\n"
+        + "function loop() {}\n"
+        + "function other() {}\n", path);
+
+    List<SymbolInformation> results = new ArrayList<>();
+    adapter.workspaceSymbol(results, "loop", 3);
+
+    assertEquals(3, results.size());
+    assertEquals("loop", results.get(0).getName());
+    assertEquals("LOOP", results.get(1).getName());
+    assertEquals("loopy", results.get(2).getName());
+
+    results = new ArrayList<>();
+    adapter.workspaceSymbol(results, "LoOpF");
+    assertEquals(1, results.size());
+    assertEquals("loopForever", results.get(0).getName());
+
+    // reparsing replaces the indexed definitions of the document
+    adapter.parse("function other() {}\n", path);
+    results = new ArrayList<>();
+    adapter.workspaceSymbol(results, "loop");
+    assertEquals(0, results.size());
+  }
+
   @Test
   public void testGotoDefinition() throws URISyntaxException {
     var adapter = new SimpleAdapter();
@@ -536,6 +584,41 @@ public class SimpleLanguageTests {
     assertEquals("loop", i.getLabel());
   }
 
+  @Test
+  public void testLazyCompletionIsResolved() throws URISyntaxException {
+    var adapter = new SimpleAdapter();
+    String path = "file:" + getRootForSimpleLanguageExamples() + File.separator + "Test.sl";
+    adapter.parse(
+        "function loop(n,   b,   c) {}\n"
+            + "function main() {\n"
+            + "  i = 0;\n"
+            + "  println(lo",
+        path);
+
+    CompletionList result = adapter.getCompletions(path, new Position(3, 12), true);
+    var item = result.getItems().get(0);
+    assertEquals("loop", item.getLabel());
+    assertNull(item.getDetail());
+    assertNull(item.getDocumentation());
+    assertNotNull(item.getData());
+
+    assertTrue(adapter.resolveCompletionItem(item));
+    assertEquals("loop(n, b, c)", item.getDetail());
+    assertEquals("loop(n, b, c)\n\nParameters: n, b, c",
+        item.getDocumentation().getRight().getValue());
+
+    // items of a recent list are still resolved, but not those of older ones
+    var old = result.getItems().get(0);
+    old.setDetail(null);
+    adapter.getCompletions(path, new Position(3, 12), true);
+    assertTrue(adapter.resolveCompletionItem(old));
+
+    for (int i = 0; i < 8; i += 1) {
+      adapter.getCompletions(path, new Position(3, 12), true);
+    }
+    assertFalse(adapter.resolveCompletionItem(old));
+  }
+
   @Test
   public void testCompletionLocals() throws URISyntaxException {
     var adapter = new SimpleAdapter();
@@ -611,4 +694,269 @@ public class SimpleLanguageTests {
     assertEquals(CompletionItemKind.Property, i.getKind());
     assertEquals("prop1", i.getLabel());
   }
+
+  @Test
+  public void testIndexingWorkspace() throws IOException, URISyntaxException {
+    File root = tempFolder.newFolder("simple-workspace");
+    File nested = new File(root, "nested");
+    File hidden = new File(root, ".hidden");
+    nested.mkdir();
+    hidden.mkdir();
+
+    Files.writeString(new File(root, "Main.sl").toPath(),
+        "function main() {\n  helper();\n}\n");
+    Files.writeString(new File(nested, "Helper.sl").toPath(), "function helper() {}\n");
+    Files.writeString(new File(hidden, "Hidden.sl").toPath(), "function hidden() {}\n");
+    Files.writeString(new File(root, "Readme.txt").toPath(), "not a source file\n");
+
+    var adapter = new SimpleAdapter();
+    var client = new TestLanguageClient();
+    adapter.connect(client);
+
+    var indexer = new WorkspaceIndexer(new LanguageAdapter[] {adapter});
+    assertEquals(2, indexer.collectFiles(List.of(root)).get(adapter).size());
+
+    indexer.index(List.of(root)).join();
+
+    assertNotNull(adapter.getStructures(new File(root, "Main.sl").toURI().toString()));
+    assertNotNull(adapter.getStructures(new File(nested, "Helper.sl").toURI().toString()));
+    assertNull(adapter.getStructures(new File(hidden, "Hidden.sl").toURI().toString()));
+
+    // the workspace linter ran after all files were loaded
+    assertEquals(1, client.diagnostics.size());
+    assertTrue(client.diagnostics.get(0).getUri().endsWith("Main.sl"));
+  }
+
+  @Test
+  public void testPublishedDocumentsAreKnownToWorkspaceLinters()
+      throws URISyntaxException {
+    var adapter = new SimpleAdapter();
+    String root = "file:" + getRootForSimpleLanguageExamples() + File.separator;
+
+    // published, but never linted, like the primitives of the Newspeak VM mirror
+    adapter.parse("function helper() {}\n", root + "Helper.sl");
+
+    var main = adapter.parse("function main() {\n  return helper;\n}\n", root + "Main.sl");
+    adapter.lintDocuments(List.of(main));
+
+    List<Diagnostic> diagnostics = main.getDiagnostics();
+    if (diagnostics != null) {
+      for (Diagnostic d : diagnostics) {
+        assertFalse(d.getMessage(), d.getMessage().startsWith("`helper`"));
+      }
+    }
+  }
+
+  @Test
+  public void testChangedFilesAreReloadedAndDeletedOnesRemoved()
+      throws IOException, URISyntaxException {
+    File root = tempFolder.newFolder("simple-watched");
+    File main = new File(root, "Main.sl");
+    File helper = new File(root, "Helper.sl");
+    Files.writeString(main.toPath(), "function main() {\n  helper();\n}\n");
+    Files.writeString(helper.toPath(), "function helper() {}\n");
+    String mainUri = main.toURI().toString();
+    String helperUri = helper.toURI().toString();
+
+    var adapter = new SimpleAdapter();
+    var client = new TestLanguageClient();
+    adapter.connect(client);
+    new WorkspaceIndexer(new LanguageAdapter[] {adapter}).index(List.of(root)).join();
+    int mainWarnings = adapter.getStructures(mainUri).getDiagnostics().size();
+
+    Files.delete(helper.toPath());
+    adapter.updateFiles(List.of(), List.of(helperUri), uri -> false);
+
+    assertNull(adapter.getStructures(helperUri));
+    List<SymbolInformation> symbols = new ArrayList<>();
+    adapter.workspaceSymbol(symbols, "helper");
+    assertEquals(0, symbols.size());
+
+    // main now uses an undefined function, and only main was reported again
+    var last = client.diagnostics.get(client.diagnostics.size() - 1);
+    assertEquals(mainUri, last.getUri());
+    assertEquals(mainWarnings + 1, last.getDiagnostics().size());
+
+    Files.writeString(helper.toPath(), "function helper() {}\n");
+    adapter.updateFiles(List.of(helperUri), List.of(), uri -> false);
+
+    assertNotNull(adapter.getStructures(helperUri));
+    assertEquals(mainWarnings, adapter.getStructures(mainUri).getDiagnostics().size());
+
+    // documents open in the editor are kept when their folder is deleted
+    String rootUri = root.toURI().toString();
+    adapter.updateFiles(List.of(), List.of(rootUri), mainUri::equals);
+    assertNotNull(adapter.getStructures(mainUri));
+    assertNull(adapter.getStructures(helperUri));
+
+    adapter.updateFiles(List.of(), List.of(rootUri), uri -> false);
+    assertNull(adapter.getStructures(mainUri));
+  }
+
+  @Test
+  public void testIdsAreSharedAcrossDocuments() throws URISyntaxException {
+    var adapter = new SimpleAdapter();
+    String root = "file:" + getRootForSimpleLanguageExamples() + File.separator;
+    var first = adapter.parse("function helper() {\n  o = new();\n  o.prop = 1;\n}\n",
+        root + "First.sl");
+    var second = adapter.parse("function main() {\n  helper();\n  println(o.prop);\n}\n",
+        root + "Second.sl");
+
+    LanguageElementId helperDef = idNamed(first.getAllDefinitions().keySet(), "helper");
+    assertSame(helperDef, idEqualTo(second.getAllReferences().keySet(), helperDef));
+
+    LanguageElementId propDef = idNamed(first.getAllDefinitions().keySet(), "prop");
+    assertSame(propDef, idEqualTo(second.getAllReferences().keySet(), propDef));
+  }
+
+  private static LanguageElementId idNamed(final Iterable<LanguageElementId> ids,
+      final String name) {
+    for (LanguageElementId id : ids) {
+      if (id.getName().equals(name)) {
+        return id;
+      }
+    }
+    fail("No id named " + name);
+    return null;
+  }
+
+  /**
+   * A call also references a local id of the calling function, so the ids
+   * are looked up by equality, not only by name.
+   */
+  private static LanguageElementId idEqualTo(final Iterable<LanguageElementId> ids,
+      final LanguageElementId expected) {
+    for (LanguageElementId id : ids) {
+      if (id.equals(expected)) {
+        return id;
+      }
+    }
+    fail("No id equal to " + expected);
+    return null;
+  }
+
+  @Test
+  public void testParsedStructuresAreFrozenSnapshots() throws URISyntaxException {
+    var adapter = new SimpleAdapter();
+    String path = "file:" + getRootForSimpleLanguageExamples() + File.separator + "Test.sl";
+    var structures = adapter.parse("function main() {\n  x = 1;\n}\n", path, 3);
+
+    assertTrue(structures.isFrozen());
+    assertEquals(3, structures.getVersion());
+    assertSame(structures, adapter.getStructures(path));
+
+    try {
+      structures.startSymbol(SymbolKind.Function, true);
+      fail("Frozen structures should not accept new symbols");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    // linters may still add diagnostics, but lists handed out do not change
+    Range range = new Range(new Position(0, 0), new Position(0, 1));
+    structures.addDiagnostic(new Diagnostic(range, "first lint"));
+    var before = structures.getDiagnostics();
+    structures.addDiagnostic(new Diagnostic(range, "second lint"));
+    assertEquals(before.size() + 1, structures.getDiagnostics().size());
+  }
+
+  /** Counts how often files are parsed while loading the workspace. */
+  private static final class CountingAdapter extends SimpleAdapter {
+    private int parsedFiles;
+
+    @Override
+    protected DocumentStructures parseFile(final String text, final String uri)
+        throws URISyntaxException {
+      parsedFiles += 1;
+      return super.parseFile(text, uri);
+    }
+  }
+
+  @Test
+  public void testIndexCacheRestoresStructures() throws IOException, URISyntaxException {
+    File root = tempFolder.newFolder("simple-cached");
+    File file = new File(root, "Main.sl");
+    Files.writeString(file.toPath(), "function add(a, b) {\n  return a + b;\n}\n"
+        + "function main() {\n  x = add(1, 2);\n  println(x);\n}\n");
+    String uri = file.toURI().toString();
+
+    var parsed = new CountingAdapter();
+    parsed.enableIndexCache(root.toPath().resolve("cache"));
+    parsed.loadFile(file);
+    assertEquals(1, parsed.parsedFiles);
+
+    var cached = new CountingAdapter();
+    cached.enableIndexCache(root.toPath().resolve("cache"));
+    var structures = cached.loadFile(file);
+    assertNotNull(structures);
+    assertEquals("served from the cache", 0, cached.parsedFiles);
+
+    assertEquals(parsed.documentSymbol(uri), cached.documentSymbol(uri));
+    assertEquals(parsed.getSemanticTokensFull(uri).getData(),
+        cached.getSemanticTokensFull(uri).getData());
+
+    Position addCall = new Position(4, 7);
+    assertEquals(parsed.getDefinitions(uri, addCall), cached.getDefinitions(uri, addCall));
+    assertEquals(parsed.hover(uri, addCall), cached.hover(uri, addCall));
+
+    Position useOfX = new Position(5, 10);
+    assertEquals(parsed.getHighlight(uri, useOfX), cached.getHighlight(uri, useOfX));
+    assertEquals(2, cached.getHighlight(uri, useOfX).size());
+
+    // a change of the content invalidates the cache entry
+    Files.writeString(file.toPath(), "function main() {}\n");
+    var changed = new CountingAdapter();
+    changed.enableIndexCache(root.toPath().resolve("cache"));
+    changed.loadFile(file);
+    assertEquals(1, changed.parsedFiles);
+    assertEquals(1, changed.documentSymbol(uri).size());
+  }
+
+  /** Indexes on its own thread, ignoring the pool, like the SOM adapter. */
+  private static final class OwnThreadAdapter extends SimpleAdapter {
+    @Override
+    public CompletableFuture<Void> indexWorkspace(final List<File> files,
+        final Executor indexingPool) {
+      return CompletableFuture.runAsync(() -> indexSequentially(files));
+    }
+  }
+
+  @Test
+  public void testIndexingPrunesCacheEntriesOfDeletedFiles() throws IOException {
+    File root = tempFolder.newFolder("simple-pruned");
+    Path cacheDir = root.toPath().resolve("cache");
+    File kept = new File(root, "Kept.sl");
+    File renamed = new File(root, "Renamed.sl");
+    Files.writeString(kept.toPath(), "function main() {}\n");
+    Files.writeString(renamed.toPath(), "function helper() {}\n");
+
+    var adapter = new SimpleAdapter();
+    adapter.connect(new TestLanguageClient());
+    adapter.enableIndexCache(cacheDir);
+    adapter.indexWorkspace(List.of(kept, renamed), Runnable::run).join();
+    assertEquals(2, countCacheEntries(cacheDir));
+
+    File moved = new File(root, "Moved.sl");
+    assertTrue(renamed.renameTo(moved));
+
+    var restarted = new SimpleAdapter();
+    restarted.connect(new TestLanguageClient());
+    restarted.enableIndexCache(cacheDir);
+    restarted.indexWorkspace(List.of(kept, moved), Runnable::run).join();
+    assertEquals(2, countCacheEntries(cacheDir));
+
+    // adapters indexing on a thread of their own prune the cache as well
+    assertTrue(moved.delete());
+    var again = new OwnThreadAdapter();
+    again.connect(new TestLanguageClient());
+    again.enableIndexCache(cacheDir);
+    again.indexWorkspace(List.of(kept), Runnable::run).join();
+    assertEquals(1, countCacheEntries(cacheDir));
+  }
+
+  private static long countCacheEntries(final Path cacheDir) throws IOException {
+    try (var entries = Files.list(cacheDir)) {
+      return entries.filter(p -> p.toString().endsWith(".idx")).count();
+    }
+  }
 }
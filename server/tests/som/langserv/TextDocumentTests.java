@@ -0,0 +1,107 @@
+package som.langserv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.junit.Test;
+
+import util.PieceTable;
+
+
+public class TextDocumentTests {
+
+  private static TextDocumentContentChangeEvent change(final int startLine,
+      final int startChar, final int endLine, final int endChar, final String text) {
+    Range range =
+        new Range(new Position(startLine, startChar), new Position(endLine, endChar));
+    return new TextDocumentContentChangeEvent(range, null, text);
+  }
+
+  @Test
+  public void testInsertDeleteAndReplace() {
+    PieceTable t = new PieceTable("function main() {\n  return 1;\n}\n");
+
+    t.replace(1, 9, 1, 10, "42");
+    assertEquals("function main() {\n  return 42;\n}\n", t.snapshot());
+
+    t.replace(0, 9, 0, 13, "");
+    assertEquals("function () {\n  return 42;\n}\n", t.snapshot());
+
+    t.replace(3, 0, 3, 0, "function foo() {}\n");
+    assertEquals("function () {\n  return 42;\n}\nfunction foo() {}\n", t.snapshot());
+  }
+
+  @Test
+  public void testMultipleEditsBeforeSnapshot() {
+    PieceTable t = new PieceTable("a\nb\nc\n");
+
+    t.replace(1, 0, 1, 1, "bb\nbbb");
+    t.replace(3, 0, 3, 1, "cc");
+    t.replace(0, 1, 0, 1, "a");
+    assertEquals(7, t.getNumberOfPieces());
+
+    assertEquals("aa\nbb\nbbb\ncc\n", t.snapshot());
+    assertEquals(1, t.getNumberOfPieces());
+  }
+
+  @Test
+  public void testEditSpanningLines() {
+    PieceTable t = new PieceTable("one\r\ntwo\r\nthree");
+
+    t.replace(0, 2, 2, 1, "--");
+    assertEquals("on--hree", t.snapshot());
+    assertEquals(8, t.length());
+  }
+
+  @Test
+  public void testPositionsBeyondLineEndAreClampedToTheLine() {
+    PieceTable t = new PieceTable("ab\r\ncd\nef");
+    assertEquals(2, t.offsetAt(0, 10));
+    assertEquals(6, t.offsetAt(1, 10));
+    assertEquals(9, t.offsetAt(2, 10));
+    assertEquals(9, t.offsetAt(5, 0));
+
+    t.replace(0, 5, 0, 5, "!");
+    assertEquals("ab!\r\ncd\nef", t.snapshot());
+
+    t.replace(1, 1, 1, 7, "");
+    assertEquals("ab!\r\nc\nef", t.snapshot());
+  }
+
+  @Test
+  public void testIncrementalChangesAreAppliedInOrder() {
+    TextDocuments docs = new TextDocuments();
+    docs.open("file:/Test.sl", "function foo() {}\n", 1);
+
+    List<TextDocumentContentChangeEvent> changes = new ArrayList<>();
+    changes.add(change(0, 9, 0, 12, "bar"));
+    changes.add(change(1, 0, 1, 0, "function baz() {}\n"));
+
+    assertTrue(docs.change("file:/Test.sl", 2, changes));
+    assertEquals("function bar() {}\nfunction baz() {}\n", docs.getText("file:/Test.sl"));
+    assertEquals(2, docs.getVersion("file:/Test.sl"));
+  }
+
+  @Test
+  public void testFullChangeReplacesText() {
+    TextDocuments docs = new TextDocuments();
+
+    List<TextDocumentContentChangeEvent> changes = new ArrayList<>();
+    changes.add(change(0, 0, 0, 0, "x"));
+    assertFalse(docs.change("file:/Test.sl", 1, changes));
+    assertNull(docs.getText("file:/Test.sl"));
+
+    changes.clear();
+    changes.add(new TextDocumentContentChangeEvent("function foo() {}\n"));
+    assertTrue(docs.change("file:/Test.sl", 2, changes));
+    assertEquals("function foo() {}\n", docs.getText("file:/Test.sl"));
+  }
+}
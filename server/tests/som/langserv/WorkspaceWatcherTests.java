@@ -0,0 +1,104 @@
+package som.langserv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.FileChangeType;
+import org.eclipse.lsp4j.FileEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class WorkspaceWatcherTests {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private final BlockingQueue<FileEvent> events = new LinkedBlockingQueue<>();
+
+  private File             root;
+  private WorkspaceWatcher watcher;
+
+  @Before
+  public void startWatcher() throws IOException {
+    root = tempFolder.newFolder("watched");
+    new File(root, ".hidden").mkdir();
+
+    watcher = new WorkspaceWatcher(List.of(root), name -> name.endsWith(".sl"),
+        events::addAll);
+    watcher.start();
+  }
+
+  @After
+  public void stopWatcher() {
+    watcher.stop();
+  }
+
+  /**
+   * Depending on the platform and timing, a creation may be followed by
+   * modifications, or a file in a new folder may be reported twice. So
+   * events of other types are skipped.
+   */
+  private FileEvent nextEvent(final FileChangeType type) throws InterruptedException {
+    while (true) {
+      FileEvent e = events.poll(10, TimeUnit.SECONDS);
+      assertNotNull("Expected a file event", e);
+      if (e.getType() == type) {
+        return e;
+      }
+    }
+  }
+
+  private static void assertEvent(final FileChangeType type, final File file,
+      final FileEvent event) {
+    assertEquals(type, event.getType());
+    // like clients, the watcher reports file:/// uris
+    assertEquals(file.toPath().toUri().toString(), event.getUri());
+  }
+
+  @Test
+  public void testChangesOfWatchedFilesAreReported()
+      throws IOException, InterruptedException {
+    File main = new File(root, "Main.sl");
+    Files.writeString(main.toPath(), "function main() {}\n");
+    assertEvent(FileChangeType.Created, main, nextEvent(FileChangeType.Created));
+
+    // changes to other files and in hidden folders are ignored
+    Files.writeString(new File(root, "Readme.txt").toPath(), "not a source file\n");
+    Files.writeString(new File(root, ".hidden/Hidden.sl").toPath(), "function hidden() {}\n");
+
+    Files.delete(main.toPath());
+    assertEvent(FileChangeType.Deleted, main, nextEvent(FileChangeType.Deleted));
+    assertEquals(0, events.size());
+  }
+
+  @Test
+  public void testFilesInNewFoldersAreReportedAndFolderDeletions()
+      throws IOException, InterruptedException {
+    File nested = new File(root, "nested");
+    nested.mkdir();
+    File helper = new File(nested, "Helper.sl");
+    Files.writeString(helper.toPath(), "function helper() {}\n");
+
+    // the file is found when the new folder is registered, or reported by it
+    assertEvent(FileChangeType.Created, helper, nextEvent(FileChangeType.Created));
+
+    Files.delete(helper.toPath());
+    Files.delete(nested.toPath());
+
+    // the deletion of the folder is reported after the one of the file
+    assertEvent(FileChangeType.Deleted, helper, nextEvent(FileChangeType.Deleted));
+    assertEvent(FileChangeType.Deleted, nested, nextEvent(FileChangeType.Deleted));
+  }
+}